@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.benchmarks;
+
+import com.bulenkov.iconloader.IconLoader.CachedImageIcon;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link CachedImageIcon} raster access: <code>getRealIcon()</code> (through
+ * {@link CachedImageIcon#getIconWidth()}) and
+ * {@link CachedImageIcon#paintIcon}.
+ * <p>
+ * <code>*Cold</code> benchmarks use a fresh icon per call, so the raster is
+ * decoded every time; <code>*Warm</code> benchmarks reuse icons that were
+ * loaded during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CachedImageIconBenchmark {
+
+  private CachedImageIcon[] myIcons;
+
+  @Setup(Level.Trial)
+  public void setUp(CorpusState state) {
+    var corpus = state.corpus;
+    myIcons = new CachedImageIcon[corpus.size()];
+
+    for (var i = 0; i < myIcons.length; i++) {
+      myIcons[i] = new CachedImageIcon(corpus.getUrl(i));
+      myIcons[i].getIconWidth();
+    }
+  }
+
+  /**
+   * Per-thread paint target.
+   */
+  @State(Scope.Thread)
+  public static class Canvas {
+
+    public Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      @SuppressWarnings("UndesirableClassUsage")
+      var image = new BufferedImage(
+        IconCorpus.ICON_SIZE,
+        IconCorpus.ICON_SIZE,
+        BufferedImage.TYPE_INT_ARGB
+      );
+      graphics = image.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      graphics.dispose();
+    }
+  }
+
+  @Benchmark
+  public int getRealIconCold(CorpusState state, CorpusState.Cursor cursor) {
+    return new CachedImageIcon(state.corpus.getUrl(cursor.next(state)))
+      .getIconWidth();
+  }
+
+  @Benchmark
+  public int getRealIconWarm(CorpusState state, CorpusState.Cursor cursor) {
+    return myIcons[cursor.next(state)].getIconWidth();
+  }
+
+  @Benchmark
+  public void paintIconCold(
+    CorpusState state,
+    CorpusState.Cursor cursor,
+    Canvas canvas
+  ) {
+    new CachedImageIcon(state.corpus.getUrl(cursor.next(state)))
+      .paintIcon(null, canvas.graphics, 0, 0);
+  }
+
+  @Benchmark
+  public void paintIconWarm(
+    CorpusState state,
+    CorpusState.Cursor cursor,
+    Canvas canvas
+  ) {
+    myIcons[cursor.next(state)].paintIcon(null, canvas.graphics, 0, 0);
+  }
+}
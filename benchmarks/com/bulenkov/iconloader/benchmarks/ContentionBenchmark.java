@@ -0,0 +1,130 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.benchmarks;
+
+import com.bulenkov.iconloader.IconLoader;
+import com.bulenkov.iconloader.IconLoader.CachedImageIcon;
+import com.bulenkov.iconloader.IconLoader.LazyIcon;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import javax.swing.Icon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Warm-path icon access from many threads at once: the
+ * <code>ourIconsCache</code> lookup in {@link IconLoader#findIcon(URL)},
+ * the synchronized <code>CachedImageIcon.getRealIcon()</code> and
+ * <code>LazyIcon.getOrComputeIcon()</code>, and the disabled icon cache behind
+ * {@link IconLoader#getDisabledIcon(Icon)}.
+ * <p>
+ * All threads rotate over the same <code>hotIcons</code> icons; with a single
+ * hot icon every call competes for the same monitor. Run through
+ * {@link ContentionRunner} to sweep the thread count and get throughput and
+ * latency percentiles side by side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ContentionBenchmark {
+
+  @Param({ "1", "64" })
+  public int hotIcons;
+
+  private URL[] myUrls;
+  private CachedImageIcon[] myIcons;
+  private LazyIcon[] myLazyIcons;
+
+  @Setup(Level.Trial)
+  public void setUp(CorpusState state) {
+    var corpus = state.corpus;
+    var count = Math.min(hotIcons, corpus.size());
+    myUrls = new URL[count];
+    myIcons = new CachedImageIcon[count];
+    myLazyIcons = new LazyIcon[count];
+
+    for (var i = 0; i < count; i++) {
+      myUrls[i] = corpus.getUrl(i);
+      myIcons[i] = (CachedImageIcon) IconLoader.findIcon(myUrls[i]);
+      IconLoader.getDisabledIcon(myIcons[i]);
+
+      final Icon icon = myIcons[i];
+      myLazyIcons[i] =
+        new LazyIcon() {
+          @Override
+          protected Icon compute() {
+            return icon;
+          }
+        };
+      myLazyIcons[i].load();
+    }
+  }
+
+  /**
+   * Per-thread position among the hot icons. Threads start at different
+   * offsets so that contention comes from sharing, not from lockstep.
+   */
+  @State(Scope.Thread)
+  public static class HotCursor {
+
+    private int myIndex;
+
+    @Setup(Level.Trial)
+    public void setUp(ThreadParams params) {
+      myIndex = params.getThreadIndex();
+    }
+
+    public int next(int size) {
+      myIndex = myIndex + 1 >= size ? 0 : myIndex + 1;
+      return myIndex;
+    }
+  }
+
+  @Benchmark
+  public Icon iconsCacheLookup(HotCursor cursor) {
+    return IconLoader.findIcon(myUrls[cursor.next(myUrls.length)]);
+  }
+
+  @Benchmark
+  public int cachedImageIconGetRealIcon(HotCursor cursor) {
+    return myIcons[cursor.next(myIcons.length)].getIconWidth();
+  }
+
+  @Benchmark
+  public int lazyIconGetOrComputeIcon(HotCursor cursor) {
+    return myLazyIcons[cursor.next(myLazyIcons.length)].getIconWidth();
+  }
+
+  @Benchmark
+  public Icon disabledIconLookup(HotCursor cursor) {
+    return IconLoader.getDisabledIcon(myIcons[cursor.next(myIcons.length)]);
+  }
+}
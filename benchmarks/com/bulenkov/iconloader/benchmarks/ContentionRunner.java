@@ -0,0 +1,147 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link ContentionBenchmark} for 1, 2, 4... up to N threads and prints
+ * throughput together with sample-time percentiles for every thread count.
+ * <p>
+ * Usage: <code>ContentionRunner [maxThreads] [jmh options]</code>, where
+ * <code>maxThreads</code> defaults to the number of available processors.
+ */
+public final class ContentionRunner {
+
+  private ContentionRunner() {}
+
+  public static void main(String[] args)
+    throws RunnerException, CommandLineOptionException {
+    var maxThreads = Runtime.getRuntime().availableProcessors();
+    var jmhArgs = args;
+
+    if (args.length > 0 && args[0].matches("\\d+")) {
+      maxThreads = Integer.parseInt(args[0]);
+      jmhArgs = List.of(args).subList(1, args.length).toArray(new String[0]);
+    }
+
+    var parent = new CommandLineOptions(jmhArgs);
+    var results = new ArrayList<RunResult>();
+
+    for (int threads : getThreadCounts(maxThreads)) {
+      var options = new OptionsBuilder()
+        .parent(parent)
+        .include(ContentionBenchmark.class.getName())
+        .threads(threads)
+        .build();
+      results.addAll(new Runner(options).run());
+    }
+
+    printReport(results);
+  }
+
+  private static List<Integer> getThreadCounts(int maxThreads) {
+    var counts = new ArrayList<Integer>();
+
+    for (var threads = 1; threads < maxThreads; threads *= 2) {
+      counts.add(threads);
+    }
+
+    counts.add(maxThreads);
+    return counts;
+  }
+
+  private static void printReport(List<RunResult> results) {
+    System.out.println();
+    System.out.printf(
+      "%-28s %8s %8s %14s %10s %10s %10s%n",
+      "Benchmark",
+      "hotIcons",
+      "Threads",
+      "ops/us",
+      "p50, us",
+      "p99, us",
+      "p99.9, us"
+    );
+
+    for (var result : results) {
+      var params = result.getParams();
+
+      if (params.getMode() != Mode.Throughput) {
+        continue;
+      }
+
+      var latency = findSampleTime(results, result);
+      var name = params.getBenchmark();
+      System.out.printf(
+        Locale.ROOT,
+        "%-28s %8s %8d %14.3f %10s %10s %10s%n",
+        name.substring(name.lastIndexOf('.') + 1),
+        params.getParam("hotIcons"),
+        params.getThreads(),
+        result.getPrimaryResult().getScore(),
+        formatPercentile(latency, 50),
+        formatPercentile(latency, 99),
+        formatPercentile(latency, 99.9)
+      );
+    }
+  }
+
+  private static RunResult findSampleTime(
+    List<RunResult> results,
+    RunResult throughput
+  ) {
+    var expected = throughput.getParams();
+
+    for (var result : results) {
+      var params = result.getParams();
+
+      if (
+        params.getMode() == Mode.SampleTime &&
+        params.getThreads() == expected.getThreads() &&
+        params.getBenchmark().equals(expected.getBenchmark()) &&
+        params.getParam("hotIcons").equals(expected.getParam("hotIcons"))
+      ) {
+        return result;
+      }
+    }
+
+    return null;
+  }
+
+  private static String formatPercentile(RunResult result, double percentile) {
+    if (result == null) {
+      return "-";
+    }
+
+    var statistics = result.getPrimaryResult().getStatistics();
+    return String.format(
+      Locale.ROOT,
+      "%.3f",
+      statistics.getPercentile(percentile)
+    );
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.benchmarks;
+
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Shared {@link IconCorpus} for all benchmarks of a trial.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+  @Param("256")
+  public int corpusSize;
+
+  public IconCorpus corpus;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    corpus = IconCorpus.create(corpusSize);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    IconCorpus.clearIconCaches();
+    corpus.dispose();
+  }
+
+  /**
+   * Round-robin index over the corpus, one per benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    private int myIndex;
+
+    public int next(CorpusState state) {
+      var index = myIndex;
+      myIndex = index + 1 == state.corpusSize ? 0 : index + 1;
+      return index;
+    }
+  }
+
+  /**
+   * Empties the {@link com.bulenkov.iconloader.IconLoader} caches before every
+   * call, so that the benchmark measures the first-decode path.
+   */
+  @State(Scope.Thread)
+  public static class ColdCaches {
+
+    @Setup(Level.Invocation)
+    public void clear() {
+      IconCorpus.clearIconCaches();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.benchmarks;
+
+import com.bulenkov.iconloader.IconLoader;
+import com.bulenkov.iconloader.IconLoader.CachedImageIcon;
+import java.util.concurrent.TimeUnit;
+import javax.swing.Icon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link IconLoader#getDisabledIcon(Icon)} for icons whose raster is already
+ * loaded. <code>getDisabledIconCold</code> asks for an icon that has never been
+ * disabled before, <code>getDisabledIconWarm</code> hits the disabled icon
+ * cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DisabledIconBenchmark {
+
+  private CachedImageIcon[] myIcons;
+
+  @Setup(Level.Trial)
+  public void setUp(CorpusState state) {
+    var corpus = state.corpus;
+    myIcons = new CachedImageIcon[corpus.size()];
+
+    for (var i = 0; i < myIcons.length; i++) {
+      myIcons[i] = new CachedImageIcon(corpus.getUrl(i));
+      IconLoader.getDisabledIcon(myIcons[i]);
+    }
+  }
+
+  /**
+   * A loaded icon which has no disabled counterpart yet.
+   */
+  @State(Scope.Thread)
+  public static class FreshIcon {
+
+    public Icon icon;
+
+    @Setup(Level.Invocation)
+    public void setUp(CorpusState state, CorpusState.Cursor cursor) {
+      icon = new CachedImageIcon(state.corpus.getUrl(cursor.next(state)));
+      icon.getIconWidth();
+    }
+  }
+
+  @Benchmark
+  public Icon getDisabledIconCold(FreshIcon fresh) {
+    return IconLoader.getDisabledIcon(fresh.icon);
+  }
+
+  @Benchmark
+  public Icon getDisabledIconWarm(
+    CorpusState state,
+    CorpusState.Cursor cursor
+  ) {
+    return IconLoader.getDisabledIcon(myIcons[cursor.next(state)]);
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.benchmarks;
+
+import com.bulenkov.iconloader.IconLoader;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import javax.imageio.ImageIO;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Generated set of PNG icons used by the benchmarks, so that they run without
+ * any external resources. Every icon comes with <code>@2x</code>,
+ * <code>_dark</code> and <code>@2x_dark</code> variants, laid out the same way
+ * as in a plugin jar.
+ * <p>
+ * Icons are written into a temporary directory which is exposed through an
+ * isolated class loader, so that {@link #getAnchor()} can be passed to
+ * {@link IconLoader#findIcon(String, Class)}.
+ */
+public final class IconCorpus {
+
+  public static final String ROOT = "/corpus/";
+  public static final int ICON_SIZE = 16;
+
+  private final File myDir;
+  private final int mySize;
+  private final URLClassLoader myLoader;
+  private final Class<?> myAnchor;
+
+  private IconCorpus(@NotNull File dir, int size) throws IOException {
+    myDir = dir;
+    mySize = size;
+
+    var codeSource = Anchor.class.getProtectionDomain().getCodeSource();
+    myLoader =
+      new URLClassLoader(
+        new URL[] { dir.toURI().toURL(), codeSource.getLocation() },
+        null
+      );
+
+    try {
+      myAnchor = Class.forName(Anchor.class.getName(), false, myLoader);
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @NotNull
+  public static IconCorpus create(int size) throws IOException {
+    var dir = Files.createTempDirectory("iconloader-corpus").toFile();
+    var icons = new File(dir, ROOT.substring(1));
+
+    if (!icons.mkdirs()) {
+      throw new IOException("Can't create " + icons);
+    }
+
+    for (var i = 0; i < size; i++) {
+      write(icons, getName(i) + ".png", i, ICON_SIZE, false);
+      write(icons, getName(i) + "@2x.png", i, 2 * ICON_SIZE, false);
+      write(icons, getName(i) + "_dark.png", i, ICON_SIZE, true);
+      write(icons, getName(i) + "@2x_dark.png", i, 2 * ICON_SIZE, true);
+    }
+
+    return new IconCorpus(dir, size);
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  /**
+   * @return a class whose {@link Class#getResource(String)} sees the corpus
+   */
+  @NotNull
+  public Class<?> getAnchor() {
+    return myAnchor;
+  }
+
+  @NotNull
+  public ClassLoader getClassLoader() {
+    return myLoader;
+  }
+
+  @NotNull
+  public String getPath(int index) {
+    return ROOT + getName(index) + ".png";
+  }
+
+  @NotNull
+  public URL getUrl(int index) {
+    try {
+      return new File(myDir, getPath(index).substring(1)).toURI().toURL();
+    } catch (MalformedURLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public void dispose() throws IOException {
+    myLoader.close();
+
+    try (var files = Files.walk(myDir.toPath())) {
+      files
+        .sorted(Comparator.reverseOrder())
+        .map(Path::toFile)
+        .forEach(File::delete);
+    }
+  }
+
+  /**
+   * Drops every icon cached by {@link IconLoader}, so that the next lookup
+   * goes through resolution and decoding again.
+   */
+  public static void clearIconCaches() {
+    IconLoader.clearCache();
+  }
+
+  @NotNull
+  private static String getName(int index) {
+    return "icon" + index;
+  }
+
+  private static void write(
+    @NotNull File dir,
+    @NotNull String name,
+    int seed,
+    int size,
+    boolean dark
+  ) throws IOException {
+    @SuppressWarnings("UndesirableClassUsage")
+    var image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    var g = image.createGraphics();
+    g.setRenderingHint(
+      RenderingHints.KEY_ANTIALIASING,
+      RenderingHints.VALUE_ANTIALIAS_ON
+    );
+
+    var hue = (seed * 0.61803398875f) % 1f;
+    g.setColor(Color.getHSBColor(hue, 0.6f, dark ? 0.55f : 0.85f));
+    g.fillRoundRect(1, 1, size - 2, size - 2, size / 4, size / 4);
+    g.setColor(dark ? Color.LIGHT_GRAY : Color.DARK_GRAY);
+    g.drawLine(size / 4, size / 2, 3 * size / 4, size / 2);
+    g.dispose();
+
+    ImageIO.write(image, "png", new File(dir, name));
+  }
+
+  /**
+   * Loaded separately by the corpus class loader, see {@link #getAnchor()}.
+   */
+  public static final class Anchor {}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.benchmarks;
+
+import com.bulenkov.iconloader.IconLoader;
+import java.util.concurrent.TimeUnit;
+import javax.swing.Icon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Icon lookup through {@link IconLoader#findIcon(String, Class)} and
+ * {@link IconLoader#findIcon(java.net.URL)}, including the first
+ * {@link Icon#getIconWidth()} that forces the raster to load.
+ * <p>
+ * <code>*Cold</code> benchmarks start every call with empty caches, so they
+ * pay for resource resolution and decoding; <code>*Warm</code> benchmarks
+ * run against an icon cache populated with the whole corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class IconLoaderBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class WarmCaches {
+
+    @Setup(Level.Iteration)
+    public void fill(CorpusState state) {
+      var corpus = state.corpus;
+
+      for (var i = 0; i < corpus.size(); i++) {
+        var icon = IconLoader.findIcon(corpus.getPath(i), corpus.getAnchor());
+        icon.getIconWidth();
+      }
+    }
+  }
+
+  @Benchmark
+  public int findIconByPathCold(
+    CorpusState state,
+    CorpusState.Cursor cursor,
+    CorpusState.ColdCaches caches
+  ) {
+    return findByPath(state, cursor);
+  }
+
+  @Benchmark
+  public int findIconByPathWarm(
+    CorpusState state,
+    CorpusState.Cursor cursor,
+    WarmCaches caches
+  ) {
+    return findByPath(state, cursor);
+  }
+
+  @Benchmark
+  public int findIconByUrlCold(
+    CorpusState state,
+    CorpusState.Cursor cursor,
+    CorpusState.ColdCaches caches
+  ) {
+    return findByUrl(state, cursor);
+  }
+
+  @Benchmark
+  public int findIconByUrlWarm(
+    CorpusState state,
+    CorpusState.Cursor cursor,
+    WarmCaches caches
+  ) {
+    return findByUrl(state, cursor);
+  }
+
+  private static int findByPath(CorpusState state, CorpusState.Cursor cursor) {
+    var corpus = state.corpus;
+    var icon = IconLoader.findIcon(
+      corpus.getPath(cursor.next(state)),
+      corpus.getAnchor()
+    );
+    return icon.getIconWidth();
+  }
+
+  private static int findByUrl(CorpusState state, CorpusState.Cursor cursor) {
+    var icon = IconLoader.findIcon(state.corpus.getUrl(cursor.next(state)));
+    return icon.getIconWidth();
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.benchmarks;
+
+import com.bulenkov.iconloader.util.ImageLoader;
+import java.awt.Image;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ImageLoader#loadFromUrl} for each variant of the corpus icons.
+ * <p>
+ * {@link ImageLoader} only caches images fetched over HTTP, so every call here
+ * is a first decode. <code>loadFromUrlCold</code> walks the whole corpus,
+ * while <code>loadFromUrlWarm</code> decodes the same file over and over, with
+ * the resource and the decoder state hot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ImageLoaderBenchmark {
+
+  @Param({ "base", "dark", "retina", "retina_dark" })
+  public String variant;
+
+  @Benchmark
+  public Image loadFromUrlCold(CorpusState state, CorpusState.Cursor cursor) {
+    return load(state, cursor.next(state));
+  }
+
+  @Benchmark
+  public Image loadFromUrlWarm(CorpusState state) {
+    return load(state, 0);
+  }
+
+  private Image load(CorpusState state, int index) {
+    var url = state.corpus.getUrl(index);
+    var dark = variant.contains("dark");
+    var retina = variant.startsWith("retina");
+    return ImageLoader.loadFromUrl(url, dark, retina);
+  }
+}
@@ -17,40 +17,68 @@
 package com.bulenkov.iconloader;
 
 import com.bulenkov.iconloader.util.ConcurrencyUtil;
+import com.bulenkov.iconloader.util.Gray;
+import com.bulenkov.iconloader.util.IconAtlas;
+import com.bulenkov.iconloader.util.IconEvents;
+import com.bulenkov.iconloader.util.IconStatistics;
+import com.bulenkov.iconloader.util.IconTrace;
+import com.bulenkov.iconloader.util.IconUsageManifest;
 import com.bulenkov.iconloader.util.ImageLoader;
 import com.bulenkov.iconloader.util.ImageUtil;
 import com.bulenkov.iconloader.util.JBImageIcon;
 import com.bulenkov.iconloader.util.JBUI;
+import com.bulenkov.iconloader.util.RasterCache;
 import com.bulenkov.iconloader.util.Registry;
+import com.bulenkov.iconloader.util.Resampler;
 import com.bulenkov.iconloader.util.RetrievableIcon;
 import com.bulenkov.iconloader.util.ScalableIcon;
 import com.bulenkov.iconloader.util.Scalr;
 import com.bulenkov.iconloader.util.SoftReference;
 import com.bulenkov.iconloader.util.StringUtil;
 import com.bulenkov.iconloader.util.UIUtil;
+import com.bulenkov.iconloader.util.VariantIndex;
+import com.bulenkov.iconloader.util.WeakIdentityCache;
 import java.awt.AlphaComposite;
+import java.awt.Color;
 import java.awt.Component;
+import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageFilter;
-import java.lang.ref.Reference;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.CellRendererPane;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -69,15 +97,41 @@ public final class IconLoader {
     new ConcurrentHashMap<>(100, 0.9f, 2);
 
   /**
-   * This cache contains mapping between icons and disabled icons.
+   * This cache contains mapping between icons and disabled icons. It's keyed
+   * by the image the icon paints, see {@link #getDisabledIconKey(Icon)}, so
+   * that all the icons wrapping the same image share a disabled icon.
    */
-  private static final Map<Icon, Icon> ourIcon2DisabledIcon = new WeakHashMap<>(
-    200
+  private static final WeakIdentityCache<Object, Icon> ourIcon2DisabledIcon =
+    new WeakIdentityCache<>();
+
+  /**
+   * Rasters of inactive (dark, scale, filter) variants, kept so that switching
+   * back to a variant doesn't reload its icons.
+   */
+  private static final VariantCache ourVariantCache = new VariantCache();
+
+  /**
+   * Icon paths that couldn't be resolved, so that repeated lookups of a bad
+   * path don't search the class path again.
+   */
+  private static final MissingIcons ourMissingIcons = new MissingIcons(
+    Registry.getInt("icon.missing.cache.size", 1024)
   );
 
+  /**
+   * Icons painted early in this session, and the ones painted early in the
+   * previous session to decode ahead of time.
+   */
+  @Nullable
+  private static volatile IconUsageManifest ourUsage =
+    IconUsageManifest.create();
+
   private static float SCALE = JBUI.scale(1f);
   private static ImageFilter IMAGE_FILTER;
 
+  @Nullable
+  private static volatile Executor ourAsyncExecutor;
+
   private static final ImageIcon EMPTY_ICON = new ImageIcon(
     UIUtil.createImage(1, 1, BufferedImage.TYPE_3BYTE_BGR)
   ) {
@@ -87,12 +141,26 @@ public final class IconLoader {
     }
   };
 
+  private static final Color PLACEHOLDER_COLOR = Gray.get(128, 32);
+
+  /**
+   * The size reported by an icon loaded asynchronously whose image header
+   * can't be read.
+   */
+  private static final int DEFAULT_PLACEHOLDER_SIZE = 16;
+
   private static final AtomicBoolean ourIsActivated = new AtomicBoolean(true);
   private static final AtomicBoolean ourIsSaveRealIconPath = new AtomicBoolean(
     false
   );
   public static final Component ourComponent = new Component() {};
 
+  static {
+    if (Registry.is("icon.jmx")) {
+      registerMBean();
+    }
+  }
+
   private IconLoader() {}
 
   @NotNull
@@ -102,13 +170,13 @@ public final class IconLoader {
 
   public static void setUseDarkIcons(boolean useDarkIcons) {
     USE_DARK_ICONS = useDarkIcons;
-    clearCache();
+    clearDisabledIconCache();
   }
 
   public static void setScale(float scale) {
     if (scale != SCALE) {
       SCALE = scale;
-      clearCache();
+      clearDisabledIconCache();
     }
   }
 
@@ -119,12 +187,71 @@ public final class IconLoader {
 
     if (IMAGE_FILTER != filter) {
       IMAGE_FILTER = filter;
-      clearCache();
+      clearDisabledIconCache();
+    }
+  }
+
+  /**
+   * Switches cached icons to asynchronous loading. An icon whose raster isn't
+   * loaded yet reports its size from the image header, paints a placeholder
+   * and schedules the load on <code>executor</code>; the component it was
+   * painted on is repainted once the raster is ready. The painting thread
+   * never decodes: it only reads the image header once per icon. An icon
+   * that fails to load keeps painting the placeholder.
+   *
+   * @param executor the executor to decode icons on, or null to load icons
+   *                 synchronously on the painting thread (the default)
+   */
+  public static void setAsyncLoadingExecutor(@Nullable Executor executor) {
+    ourAsyncExecutor = executor;
+  }
+
+  /**
+   * Registers {@link IconLoaderMXBean} with the platform MBean server, unless
+   * it's registered already. It's registered on startup if the
+   * <code>icon.jmx</code> property is set.
+   */
+  public static void registerMBean() {
+    try {
+      var server = ManagementFactory.getPlatformMBeanServer();
+      var name = new ObjectName(IconLoaderMXBean.OBJECT_NAME);
+
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new Statistics(), name);
+      }
+    } catch (InstanceAlreadyExistsException ignore) {
+      // registered concurrently
+    } catch (JMException e) {
+      throw new IllegalStateException(e);
     }
   }
 
-  private static void clearCache() {
+  /**
+   * Drops every cached icon together with the caches derived from icon
+   * resources: parked variants, cached rasters, the atlas page being filled,
+   * the variant index and the record of missing paths. Call it when the
+   * resources change, e.g. after a plugin jar is replaced, so that the next
+   * lookup resolves and decodes icons again.
+   * <p>
+   * Switching the theme, scale or filter doesn't need it: cached icons switch
+   * variants by themselves and keep the inactive ones parked.
+   */
+  public static void clearCache() {
     ourIconsCache.clear();
+    ourVariantCache.clear();
+    RasterCache.getInstance().clear();
+    IconAtlas.clear();
+    VariantIndex.clear();
+    ourMissingIcons.clear();
+    clearDisabledIconCache();
+  }
+
+  /**
+   * Cached icons switch between variants by themselves, see
+   * <code>CachedImageIcon.getRealIcon()</code>, but disabled icons are
+   * snapshots of the variant that was active when they were created.
+   */
+  private static void clearDisabledIconCache() {
     ourIcon2DisabledIcon.clear();
   }
 
@@ -153,6 +280,7 @@ public final class IconLoader {
       var field = cur.getField(path.substring(path.lastIndexOf('.') + 1));
       return (Icon) field.get(null);
     } catch (Exception e) {
+      ourMissingIcons.add(path, classLoader);
       return null;
     }
   }
@@ -189,6 +317,13 @@ public final class IconLoader {
     return !ourIsActivated.get();
   }
 
+  /**
+   * This method is for test purposes only
+   */
+  static void setUsageManifest(@Nullable IconUsageManifest usage) {
+    ourUsage = usage;
+  }
+
   /**
    * This method is for test purposes only
    */
@@ -224,15 +359,34 @@ public final class IconLoader {
     boolean computeNow,
     boolean strict
   ) {
+    var originalPath = path;
     path = patchPath(path);
+    var classLoader = aClass.getClassLoader();
+    replayUsage(classLoader);
 
-    if (isReflectivePath(path)) {
-      return getReflectiveIcon(path, aClass.getClassLoader());
+    var reflective = isReflectivePath(path);
+    var missingPath = reflective ? path : getAbsolutePath(path, aClass);
+
+    if (ourMissingIcons.contains(missingPath, classLoader)) {
+      // reflective icons are looked up leniently, like getReflectiveIcon does
+      if (strict && !reflective) throw new RuntimeException(
+        "Can't find icon in '" + path + "' near " + aClass
+      );
+
+      return null;
     }
 
+    if (reflective) {
+      return getReflectiveIcon(path, classLoader);
+    }
+
+    var resolveStart = IconTrace.startResolve();
     var myURL = aClass.getResource(path);
+    IconTrace.resolved(resolveStart, path, aClass.getName(), myURL);
 
     if (myURL == null) {
+      ourMissingIcons.add(missingPath, classLoader);
+
       if (strict) throw new RuntimeException(
         "Can't find icon in '" + path + "' near " + aClass
       );
@@ -244,6 +398,8 @@ public final class IconLoader {
 
     if (icon instanceof CachedImageIcon) {
       ((CachedImageIcon) icon).myOriginalPath = path;
+      ((CachedImageIcon) icon).myAbsolutePath =
+        getAbsolutePath(originalPath, aClass);
       ((CachedImageIcon) icon).myClassLoader = aClass.getClassLoader();
     }
 
@@ -268,6 +424,40 @@ public final class IconLoader {
     return path;
   }
 
+  /**
+   * @return the path {@link Class#getResource(String)} resolves
+   * <code>path</code> to, relative paths are resolved against the package of
+   * <code>aClass</code>
+   */
+  @NotNull
+  private static String getAbsolutePath(
+    @NotNull String path,
+    @NotNull Class<?> aClass
+  ) {
+    if (StringUtil.startsWithChar(path, '/')) {
+      return path;
+    }
+
+    var packageName = aClass.getPackageName();
+    return packageName.isEmpty()
+      ? "/" + path
+      : "/" + packageName.replace('.', '/') + "/" + path;
+  }
+
+  /**
+   * Returns the icon paths that were looked up and not found more than once
+   * since the caches were last cleared, e.g. because a component repaints an
+   * icon with a wrong path. Reflective paths like
+   * <code>AllIcons.General.Add</code> are reported as is, resource paths
+   * relative to a class are reported as absolute paths.
+   *
+   * @return the number of failed lookups by path, most frequent first
+   */
+  @NotNull
+  public static Map<String, Integer> getRepeatedlyMissingIcons() {
+    return ourMissingIcons.getRepeated();
+  }
+
   private static boolean isReflectivePath(@NotNull String path) {
     var paths = StringUtil.split(path, ".");
     return paths.size() > 1 && paths.getFirst().endsWith("Icons");
@@ -286,8 +476,10 @@ public final class IconLoader {
 
     try {
       var icon = ourIconsCache.get(new URI(url.toString()));
+      IconStatistics.ICONS_CACHE.lookup();
 
       if (icon == null) {
+        IconStatistics.ICONS_CACHE.miss();
         icon = new CachedImageIcon(url);
 
         if (useCache) {
@@ -311,7 +503,14 @@ public final class IconLoader {
     @NotNull String path,
     @NotNull ClassLoader classLoader
   ) {
+    var originalPath = path;
     path = patchPath(path);
+    replayUsage(classLoader);
+
+    if (ourMissingIcons.contains(path, classLoader)) {
+      return null;
+    }
+
     if (isReflectivePath(path)) {
       return getReflectiveIcon(path, classLoader);
     }
@@ -320,17 +519,120 @@ public final class IconLoader {
       return null;
     }
 
+    var resolveStart = IconTrace.startResolve();
     final var url = classLoader.getResource(path.substring(1));
+    IconTrace.resolved(resolveStart, path, classLoader.toString(), url);
+
+    if (url == null) {
+      ourMissingIcons.add(path, classLoader);
+      return null;
+    }
+
     final var icon = findIcon(url);
 
     if (icon instanceof CachedImageIcon) {
       ((CachedImageIcon) icon).myOriginalPath = path;
+      ((CachedImageIcon) icon).myAbsolutePath = originalPath;
       ((CachedImageIcon) icon).myClassLoader = classLoader;
     }
 
     return icon;
   }
 
+  /**
+   * Resolves and decodes the given icons on <code>executor</code>, so that
+   * later {@link #findIcon(String, Class)} calls find them cached and loaded.
+   * The variant matching the current dark/Retina/scale settings is loaded,
+   * exactly as painting the icon would. Paths that can't be found are
+   * skipped.
+   *
+   * @return a future which completes when all the icons are loaded
+   */
+  @NotNull
+  public static CompletableFuture<Void> preload(
+    @NotNull Collection<String> paths,
+    @NotNull final Class<?> aClass,
+    @NotNull Executor executor
+  ) {
+    return preload(paths, path -> findIcon(path, aClass), executor);
+  }
+
+  /**
+   * Same as {@link #preload(Collection, Class, Executor)} for absolute paths
+   * resolved by {@link #findIcon(String, ClassLoader)}.
+   */
+  @NotNull
+  public static CompletableFuture<Void> preload(
+    @NotNull Collection<String> paths,
+    @NotNull final ClassLoader classLoader,
+    @NotNull Executor executor
+  ) {
+    return preload(paths, path -> findIcon(path, classLoader), executor);
+  }
+
+  /**
+   * Decodes the icons the previous session painted early on with this class
+   * loader, the first time an icon is requested with it. Only the icons
+   * painted in the current dark/scale/Retina variant are loaded, on the
+   * common fork-join pool.
+   */
+  private static void replayUsage(@Nullable ClassLoader classLoader) {
+    var usage = ourUsage;
+
+    if (usage == null || classLoader == null) {
+      return;
+    }
+
+    var entries = usage.takePending(classLoader);
+
+    if (entries == null) {
+      return;
+    }
+
+    var variant = getUsageVariant(USE_DARK_ICONS, SCALE);
+    var paths = entries
+      .stream()
+      .filter(entry -> entry.variant().equals(variant))
+      .map(IconUsageManifest.Entry::path)
+      .toList();
+
+    if (!paths.isEmpty()) {
+      preload(paths, classLoader, ForkJoinPool.commonPool());
+    }
+  }
+
+  @NotNull
+  private static String getUsageVariant(boolean dark, float scale) {
+    var retina = UIUtil.isRetina() ? "x2" : "";
+    return (dark ? "dark" : "light") + "@" + scale + retina;
+  }
+
+  @NotNull
+  private static CompletableFuture<Void> preload(
+    @NotNull Collection<String> paths,
+    @NotNull Function<String, Icon> finder,
+    @NotNull Executor executor
+  ) {
+    var futures = new CompletableFuture<?>[paths.size()];
+    var i = 0;
+
+    for (var path : paths) {
+      futures[i++] =
+        CompletableFuture.runAsync(
+          () -> {
+            var icon = finder.apply(path);
+
+            if (icon != null) {
+              getIconSnapshot(icon); // loads the raster, even in async mode
+            }
+          },
+          executor
+        );
+    }
+
+    return CompletableFuture.allOf(futures);
+  }
+
   @Nullable
   private static ImageIcon checkIcon(final Image image, @NotNull URL url) {
     if (image == null || image.getHeight(LabelHolder.ourFakeComponent) < 1) { // image wasn't loaded or broken
@@ -360,38 +662,75 @@ public final class IconLoader {
       return null;
     }
 
-    var disabledIcon = ourIcon2DisabledIcon.get(icon);
+    if (!isGoodSize(icon)) {
+      return EMPTY_ICON;
+    }
 
-    if (disabledIcon == null) {
-      if (!isGoodSize(icon)) {
-        return EMPTY_ICON;
+    final var source = icon;
+    IconStatistics.DISABLED_ICONS_CACHE.lookup();
+    return ourIcon2DisabledIcon.get(
+      getDisabledIconKey(icon),
+      key -> {
+        IconStatistics.DISABLED_ICONS_CACHE.miss();
+        return createDisabledIcon(source);
       }
+    );
+  }
 
-      final var scale = UIUtil.isRetina() ? 2 : 1;
-      var image = new BufferedImage(
-        scale * icon.getIconWidth(),
-        scale * icon.getIconHeight(),
-        BufferedImage.TYPE_INT_ARGB
-      );
-
-      final var graphics = image.createGraphics();
-      graphics.setColor(UIUtil.TRANSPARENT_COLOR);
-      graphics.fillRect(0, 0, icon.getIconWidth(), icon.getIconHeight());
-      graphics.scale(scale, scale);
-      icon.paintIcon(LabelHolder.ourFakeComponent, graphics, 0, 0);
-      graphics.dispose();
+  /**
+   * @return the object identifying what <code>icon</code> paints: the raster
+   * of a cached icon or the image of an image icon
+   */
+  @NotNull
+  private static Object getDisabledIconKey(@NotNull Icon icon) {
+    if (icon instanceof CachedImageIcon) {
+      icon = ((CachedImageIcon) icon).getRealIcon();
+    }
 
-      var img = ImageUtil.filter(image, UIUtil.getGrayFilter());
+    if (icon instanceof ImageIcon && !(icon instanceof IconAtlas.AtlasIcon)) {
+      var image = ((ImageIcon) icon).getImage();
 
-      if (UIUtil.isRetina()) {
-        img = RetinaImage.createFrom(img);
+      if (image != null) {
+        return image;
       }
+    }
+
+    return icon;
+  }
+
+  @NotNull
+  private static Icon createDisabledIcon(@NotNull Icon icon) {
+    var event = new IconEvents.DisabledIconEvent();
+    event.begin();
+
+    final var scale = UIUtil.isRetina() ? 2 : 1;
+    var image = new BufferedImage(
+      scale * icon.getIconWidth(),
+      scale * icon.getIconHeight(),
+      BufferedImage.TYPE_INT_ARGB
+    );
+
+    final var graphics = image.createGraphics();
+    graphics.setColor(UIUtil.TRANSPARENT_COLOR);
+    graphics.fillRect(0, 0, icon.getIconWidth(), icon.getIconHeight());
+    graphics.scale(scale, scale);
+    icon.paintIcon(LabelHolder.ourFakeComponent, graphics, 0, 0);
+    graphics.dispose();
+
+    Image img = UIUtil.getGrayRasterFilter().filter(image);
+
+    if (UIUtil.isRetina()) {
+      img = RetinaImage.createFrom(img);
+    }
 
-      disabledIcon = new JBImageIcon(img);
-      ourIcon2DisabledIcon.put(icon, disabledIcon);
+    if (event.shouldCommit()) {
+      event.icon = icon.toString();
+      event.width = icon.getIconWidth();
+      event.height = icon.getIconHeight();
+      event.commit();
     }
 
-    return disabledIcon;
+    return new JBImageIcon(img);
   }
 
   public static Icon getTransparentIcon(@NotNull final Icon icon) {
@@ -452,98 +791,248 @@ public final class IconLoader {
 
   public static final class CachedImageIcon implements ScalableIcon {
 
-    private volatile Object myRealIcon;
+    /**
+     * The variant the icon is loaded for together with its raster. It's
+     * replaced as a whole, so that reading a loaded icon takes a single
+     * volatile read and no lock.
+     */
+    @NotNull
+    private volatile State myState;
+
     public String myOriginalPath;
+
+    /**
+     * The absolute path the icon was requested with, before
+     * {@link #patchPath(String)}: the usage manifest records it, and its
+     * replay patches it again.
+     */
+    private String myAbsolutePath;
     private ClassLoader myClassLoader;
+    private boolean myUsageRecorded;
 
     @NotNull
     private final URL myUrl;
 
-    private volatile boolean dark;
-    private volatile float scale;
     private final int numberOfPatchers = 0;
 
-    private volatile ImageFilter filter;
+    private volatile Dimension myPlaceholderSize;
     private final MyScaledIconsCache myScaledIconsCache =
       new MyScaledIconsCache();
 
     public CachedImageIcon(@NotNull URL url) {
       myUrl = url;
-      dark = USE_DARK_ICONS;
-      scale = SCALE;
-      filter = IMAGE_FILTER;
+      myState = new State(USE_DARK_ICONS, SCALE, IMAGE_FILTER, null);
     }
 
     @NotNull
-    private synchronized ImageIcon getRealIcon() {
+    private ImageIcon getRealIcon() {
+      var icon = getLoadedIcon();
+      return icon != null ? icon : loadRealIcon();
+    }
+
+    /**
+     * Loads the raster of the current variant, or takes it from the variant
+     * cache, under the icon lock. Concurrent callers wait for a single load.
+     */
+    @NotNull
+    private synchronized ImageIcon loadRealIcon() {
+      var state = myState;
+
       if (
-        isLoaderDisabled() &&
-        (myRealIcon == null ||
-          dark != USE_DARK_ICONS ||
-          scale != SCALE ||
-          filter != IMAGE_FILTER)
+        isLoaderDisabled() && (state.realIcon() == null || !state.isCurrent())
       ) {
         return EMPTY_ICON;
       }
 
-      if (!isValid()) {
-        myRealIcon = null;
-        dark = USE_DARK_ICONS;
-        scale = SCALE;
-        filter = IMAGE_FILTER;
+      if (!state.isCurrent()) {
+        var previous = state.dereference();
+        state.release();
+
+        if (previous != null && previous != EMPTY_ICON) {
+          ourVariantCache.put(state.getVariantKey(myUrl), previous);
+        }
+
+        state = new State(USE_DARK_ICONS, SCALE, IMAGE_FILTER, null);
+        myPlaceholderSize = null;
         myScaledIconsCache.clear();
+        myState = state;
+
+        var parked = ourVariantCache.take(state.getVariantKey(myUrl));
+
+        if (parked != null) {
+          return setRealIcon(state, parked);
+        }
       }
 
-      var realIcon = myRealIcon;
+      var icon = state.dereference();
 
-      if (realIcon instanceof Icon) {
-        return (ImageIcon) realIcon;
+      if (icon != null) {
+        return icon;
       }
 
-      ImageIcon icon;
+      var start = System.nanoTime();
+      var image = ImageLoader.loadFromUrl(myUrl, true, state.filter());
+      IconStatistics.LOAD_TIMES.record(System.nanoTime() - start);
+      icon = checkIcon(image, myUrl);
 
-      if (realIcon instanceof Reference) {
-        //noinspection unchecked
-        icon = ((Reference<ImageIcon>) realIcon).get();
+      // A failure is remembered until the variant changes or the caches are
+      // cleared, so that painting a broken icon doesn't load it again.
+      return setRealIcon(state, icon == null ? EMPTY_ICON : icon);
+    }
 
-        if (icon != null) {
-          return icon;
+    /**
+     * Small icons are kept strongly (and packed into {@link IconAtlas} if it's
+     * enabled), bigger ones are kept in {@link RasterCache}.
+     *
+     * @return the icon to use from now on
+     */
+    @NotNull
+    private ImageIcon setRealIcon(
+      @NotNull State state,
+      @NotNull ImageIcon icon
+    ) {
+      if (icon.getIconWidth() < 50 && icon.getIconHeight() < 50) {
+        if (icon != EMPTY_ICON && IconAtlas.isEnabled()) {
+          icon = IconAtlas.pack(icon);
         }
+
+        myState = state.withRealIcon(icon);
+      } else {
+        myState = state.withRealIcon(RasterCache.getInstance().add(icon, null));
       }
 
-      var image = ImageLoader.loadFromUrl(myUrl, true, filter);
-      icon = checkIcon(image, myUrl);
+      return icon;
+    }
 
-      if (icon != null) {
-        if (icon.getIconWidth() < 50 && icon.getIconHeight() < 50) {
-          realIcon = icon;
-        } else {
-          realIcon = new SoftReference<>(icon);
+    /**
+     * @return the raster of the current variant if it's loaded, without
+     * blocking on a load in progress
+     */
+    @Nullable
+    private ImageIcon getLoadedIcon() {
+      var state = myState;
+      return state.isCurrent() ? state.dereference() : null;
+    }
+
+    /**
+     * @return the raster the icon holds strongly, outside of
+     * {@link RasterCache}, if any
+     */
+    @Nullable
+    private ImageIcon getStrongRaster() {
+      var realIcon = myState.realIcon();
+      return realIcon instanceof ImageIcon && realIcon != EMPTY_ICON
+        ? (ImageIcon) realIcon
+        : null;
+    }
+
+    /**
+     * @return the size an icon loaded asynchronously reports until it's
+     * loaded, read from the image header once
+     */
+    @NotNull
+    private Dimension getPlaceholderSize() {
+      var size = myPlaceholderSize;
+
+      if (size == null) {
+        size = ImageLoader.loadImageSize(myUrl, true);
+
+        if (size == null) {
+          var side = JBUI.scale(DEFAULT_PLACEHOLDER_SIZE);
+          size = new Dimension(side, side);
         }
 
-        myRealIcon = realIcon;
+        myPlaceholderSize = size;
       }
 
-      return icon == null ? EMPTY_ICON : icon;
+      return size;
     }
 
-    @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-    private boolean isValid() {
-      return dark == USE_DARK_ICONS && scale == SCALE && filter == IMAGE_FILTER;
+    /**
+     * @return the loaded raster of the current variant, or null if it's not
+     * loaded yet, in which case the load is scheduled, or if it failed to load
+     */
+    @Nullable
+    private ImageIcon getAsyncIcon(
+      @Nullable Component c,
+      @NotNull Executor executor
+    ) {
+      var icon = getLoadedIcon();
+
+      if (icon == null) {
+        AsyncLoader.request(this, c, executor);
+      }
+
+      return icon == EMPTY_ICON ? null : icon;
     }
 
     @Override
     public void paintIcon(Component c, Graphics g, int x, int y) {
+      if (ourUsage != null && !myUsageRecorded) {
+        recordUsage(ourUsage);
+      }
+
+      var executor = ourAsyncExecutor;
+
+      if (executor != null) {
+        var icon = getAsyncIcon(c, executor);
+
+        if (icon != null) {
+          icon.paintIcon(c, g, x, y);
+        } else {
+          var size = getPlaceholderSize();
+          var color = g.getColor();
+          g.setColor(PLACEHOLDER_COLOR);
+          g.fillRect(x, y, size.width, size.height);
+          g.setColor(color);
+        }
+
+        return;
+      }
+
       getRealIcon().paintIcon(c, g, x, y);
     }
 
+    private void recordUsage(@NotNull IconUsageManifest usage) {
+      if (
+        usage.isRecording() && myAbsolutePath != null && myClassLoader != null
+      ) {
+        var state = myState;
+        usage.record(
+          myClassLoader,
+          myAbsolutePath,
+          getUsageVariant(state.dark(), state.scale())
+        );
+      }
+
+      myUsageRecorded = true;
+    }
+
     @Override
     public int getIconWidth() {
+      var executor = ourAsyncExecutor;
+
+      if (executor != null) {
+        var icon = getAsyncIcon(null, executor);
+        return icon != null
+          ? icon.getIconWidth()
+          : getPlaceholderSize().width;
+      }
+
       return getRealIcon().getIconWidth();
     }
 
     @Override
     public int getIconHeight() {
+      var executor = ourAsyncExecutor;
+
+      if (executor != null) {
+        var icon = getAsyncIcon(null, executor);
+        return icon != null
+          ? icon.getIconHeight()
+          : getPlaceholderSize().height;
+      }
+
       return getRealIcon().getIconHeight();
     }
 
@@ -558,7 +1047,7 @@ public final class IconLoader {
         return this;
       }
 
-      if (!isValid()) {
+      if (!myState.isCurrent()) {
         getRealIcon(); // force state update & cache reset
       }
 
@@ -569,26 +1058,31 @@ public final class IconLoader {
     private class MyScaledIconsCache {
 
       // Map {false -> image}, {true -> image@2x}
-      private final Map<Boolean, SoftReference<Image>> origImagesCache =
+      private final Map<Boolean, RasterCache.Ref<Image>> origImagesCache =
         Collections.synchronizedMap(new HashMap<>(2));
 
       private static final int SCALED_ICONS_CACHE_LIMIT = 5;
 
       // Map {effective scale -> icon}
-      private final Map<Float, SoftReference<Icon>> scaledIconsCache =
+      private final Map<Float, RasterCache.Ref<Icon>> scaledIconsCache =
         Collections.synchronizedMap(
           new LinkedHashMap<>(SCALED_ICONS_CACHE_LIMIT) {
             @Override
             public boolean removeEldestEntry(
-              Map.Entry<Float, SoftReference<Icon>> entry
+              Map.Entry<Float, RasterCache.Ref<Icon>> entry
             ) {
-              return size() > SCALED_ICONS_CACHE_LIMIT;
+              if (size() > SCALED_ICONS_CACHE_LIMIT) {
+                entry.getValue().release();
+                return true;
+              }
+
+              return false;
             }
           }
         );
 
       public Image getOrigImage(boolean retina) {
-        var img = SoftReference.dereference(origImagesCache.get(retina));
+        var img = SoftReference.deref(origImagesCache.get(retina));
 
         if (img == null) {
           img =
@@ -596,9 +1090,13 @@ public final class IconLoader {
               myUrl,
               UIUtil.isUnderDarcula(),
               retina,
-              filter
+              myState.filter()
             );
-          origImagesCache.put(retina, new SoftReference<>(img));
+
+          if (img != null) {
+            var ref = RasterCache.getInstance().add(img, null);
+            release(origImagesCache.put(retina, ref));
+          }
         }
 
         return img;
@@ -606,11 +1104,14 @@ public final class IconLoader {
 
       public Icon getScaledIcon(float scale) {
         var effectiveScale = scale * JBUI.scale(1f);
-        var icon = SoftReference.dereference(
-          scaledIconsCache.get(effectiveScale)
-        );
+        var icon = SoftReference.deref(scaledIconsCache.get(effectiveScale));
+        IconStatistics.SCALED_ICONS_CACHE.lookup();
 
         if (icon == null) {
+          IconStatistics.SCALED_ICONS_CACHE.miss();
+          var event = new IconEvents.ScaledIconEvent();
+          event.begin();
+
           var needRetinaImage = (effectiveScale >= 1.5f || UIUtil.isRetina());
           var image = getOrigImage(needRetinaImage);
 
@@ -619,9 +1120,11 @@ public final class IconLoader {
             var width = (int) (ImageUtil.getRealWidth(iconImage) * scale);
             var height = (int) (ImageUtil.getRealHeight(iconImage) * scale);
 
+            // a single pass with cached kernels, rather than the repeated
+            // 1/7 steps of ULTRA_QUALITY
             var resizedImage = Scalr.resize(
               ImageUtil.toBufferedImage(image),
-              Scalr.Method.ULTRA_QUALITY,
+              Scalr.Method.BICUBIC,
               width,
               height
             );
@@ -632,7 +1135,16 @@ public final class IconLoader {
             }
 
             icon = getIcon(resizedImage);
-            scaledIconsCache.put(effectiveScale, new SoftReference<>(icon));
+            var ref = RasterCache.getInstance().add(icon, null);
+            release(scaledIconsCache.put(effectiveScale, ref));
+
+            if (event.shouldCommit()) {
+              event.url = myUrl.toString();
+              event.scale = scale;
+              event.width = width;
+              event.height = height;
+              event.commit();
+            }
           }
         }
 
@@ -640,8 +1152,67 @@ public final class IconLoader {
       }
 
       public void clear() {
-        scaledIconsCache.clear();
-        origImagesCache.clear();
+        synchronized (scaledIconsCache) {
+          scaledIconsCache.values().forEach(RasterCache.Ref::release);
+          scaledIconsCache.clear();
+        }
+
+        synchronized (origImagesCache) {
+          origImagesCache.values().forEach(RasterCache.Ref::release);
+          origImagesCache.clear();
+        }
+      }
+
+      private static void release(@Nullable RasterCache.Ref<?> ref) {
+        if (ref != null) {
+          ref.release();
+        }
+      }
+    }
+
+    /**
+     * @param realIcon the raster, either an {@link ImageIcon} or a
+     *                 {@link RasterCache.Ref} to it, or null if it's not
+     *                 loaded yet
+     */
+    private record State(
+      boolean dark,
+      float scale,
+      @Nullable ImageFilter filter,
+      @Nullable Object realIcon
+    ) {
+      @NotNull
+      public State withRealIcon(@NotNull Object realIcon) {
+        return new State(dark, scale, filter, realIcon);
+      }
+
+      public boolean isCurrent() {
+        return (
+          dark == USE_DARK_ICONS && scale == SCALE && filter == IMAGE_FILTER
+        );
+      }
+
+      @Nullable
+      public ImageIcon dereference() {
+        if (realIcon instanceof RasterCache.Ref<?> ref) {
+          return (ImageIcon) ref.get();
+        }
+
+        return (ImageIcon) realIcon;
+      }
+
+      /**
+       * Frees the cached raster once the icon switches to another variant.
+       */
+      public void release() {
+        if (realIcon instanceof RasterCache.Ref<?> ref) {
+          ref.release();
+        }
+      }
+
+      @NotNull
+      public VariantKey getVariantKey(@NotNull URL url) {
+        return new VariantKey(url.toString(), dark, scale, filter);
       }
     }
   }
@@ -702,6 +1273,529 @@ public final class IconLoader {
     protected abstract Icon compute();
   }
 
+  /**
+   * Loads icons painted in asynchronous mode and repaints the components
+   * which asked for them. Repaints of all the icons loaded meanwhile are
+   * coalesced into a single event. A component is revalidated as well if the
+   * loaded icon turns out to differ in size from its placeholder.
+   */
+  private static final class AsyncLoader {
+
+    private static final Map<CachedImageIcon, Set<Component>> ourRequests =
+      new HashMap<>();
+    private static final Set<Component> ourRepaintTargets =
+      Collections.newSetFromMap(new WeakHashMap<>());
+    private static final Set<Component> ourRevalidateTargets =
+      Collections.newSetFromMap(new WeakHashMap<>());
+    private static boolean ourRepaintScheduled;
+
+    public static void request(
+      @NotNull final CachedImageIcon icon,
+      @Nullable Component c,
+      @NotNull Executor executor
+    ) {
+      boolean schedule;
+
+      synchronized (ourRequests) {
+        var targets = ourRequests.get(icon);
+        schedule = targets == null;
+
+        if (schedule) {
+          targets = Collections.newSetFromMap(new WeakHashMap<>());
+          ourRequests.put(icon, targets);
+        }
+
+        if (c != null) {
+          targets.add(getRepaintTarget(c));
+        }
+      }
+
+      if (!schedule) {
+        return;
+      }
+
+      try {
+        executor.execute(() -> {
+          try {
+            icon.getRealIcon();
+          } finally {
+            loaded(icon);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        synchronized (ourRequests) {
+          ourRequests.remove(icon);
+        }
+      }
+    }
+
+    private static void loaded(@NotNull CachedImageIcon icon) {
+      var loaded = icon.getLoadedIcon();
+      var placeholder = icon.myPlaceholderSize;
+
+      synchronized (ourRequests) {
+        var targets = ourRequests.remove(icon);
+
+        // The placeholder stays if loading failed, nothing to repaint.
+        if (targets == null || loaded == null || loaded == EMPTY_ICON) {
+          return;
+        }
+
+        ourRepaintTargets.addAll(targets);
+
+        if (
+          placeholder != null &&
+          (placeholder.width != loaded.getIconWidth() ||
+            placeholder.height != loaded.getIconHeight())
+        ) {
+          ourRevalidateTargets.addAll(targets);
+        }
+
+        if (ourRepaintScheduled || ourRepaintTargets.isEmpty()) {
+          return;
+        }
+
+        ourRepaintScheduled = true;
+      }
+
+      SwingUtilities.invokeLater(AsyncLoader::repaint);
+    }
+
+    private static void repaint() {
+      List<Component> targets;
+      List<Component> resized;
+
+      synchronized (ourRequests) {
+        targets = new ArrayList<>(ourRepaintTargets);
+        resized = new ArrayList<>(ourRevalidateTargets);
+        ourRepaintTargets.clear();
+        ourRevalidateTargets.clear();
+        ourRepaintScheduled = false;
+      }
+
+      for (var target : resized) {
+        if (target instanceof JComponent) {
+          ((JComponent) target).revalidate();
+        } else {
+          target.invalidate();
+        }
+      }
+
+      for (var target : targets) {
+        target.repaint();
+      }
+    }
+
+    /**
+     * Renderer components aren't part of the hierarchy being painted, so the
+     * list, tree or table that owns the renderer is repainted instead.
+     */
+    @NotNull
+    private static Component getRepaintTarget(@NotNull Component c) {
+      var parent = c.getParent();
+
+      if (parent instanceof CellRendererPane && parent.getParent() != null) {
+        return parent.getParent();
+      }
+
+      return c;
+    }
+  }
+
+  private record VariantKey(
+    @NotNull String url,
+    boolean dark,
+    float scale,
+    @Nullable ImageFilter filter
+  ) {}
+
+  /**
+   * Rasters of inactive variants by variant. Their memory is managed by
+   * {@link RasterCache}, an evicted raster is dropped from the map.
+   */
+  private static final class VariantCache {
+
+    private final Map<VariantKey, RasterCache.Ref<ImageIcon>> myIcons =
+      new ConcurrentHashMap<>();
+
+    /**
+     * An icon packed into {@link IconAtlas} is copied out of it, so that the
+     * budget accounts for its own raster rather than pinning a whole page.
+     */
+    public void put(@NotNull VariantKey key, @NotNull ImageIcon icon) {
+      var ref = RasterCache
+        .getInstance()
+        .add(IconAtlas.unpack(icon), evicted -> myIcons.remove(key, evicted));
+      var old = myIcons.put(key, ref);
+
+      if (old != null) {
+        old.release();
+      }
+    }
+
+    @Nullable
+    public ImageIcon take(@NotNull VariantKey key) {
+      var ref = myIcons.remove(key);
+
+      if (ref == null) {
+        return null;
+      }
+
+      var icon = ref.get();
+      ref.release();
+      return icon;
+    }
+
+    public void clear() {
+      for (var ref : myIcons.values()) {
+        ref.release();
+      }
+
+      myIcons.clear();
+    }
+  }
+
+  /**
+   * Bounded set of icon paths that couldn't be resolved, per class loader,
+   * with the number of times each was looked up. The class loader is held
+   * weakly and compared by identity. Lookups don't lock; when the set is
+   * full, an entry is evicted with the CLOCK policy {@link RasterCache} uses,
+   * so that paths which keep being looked up stay. The limit is set with the
+   * <code>icon.missing.cache.size</code> property.
+   */
+  private static final class MissingIcons {
+
+    private static final int MAX_USES = 3;
+
+    private final ConcurrentMap<MissKey, Miss> myMisses =
+      new ConcurrentHashMap<>();
+    private final List<Miss> myRing = new ArrayList<>(); // guarded by this
+    private int myHand;
+    private final int myLimit;
+
+    private MissingIcons(int limit) {
+      myLimit = limit;
+    }
+
+    public boolean contains(
+      @NotNull String path,
+      @Nullable ClassLoader classLoader
+    ) {
+      var miss = myMisses.get(new MissKey(path, classLoader, false));
+
+      if (miss == null) {
+        return false;
+      }
+
+      if (miss.myUses < MAX_USES) {
+        miss.myUses++;
+      }
+
+      miss.myCount.incrementAndGet();
+      return true;
+    }
+
+    public void add(@NotNull String path, @Nullable ClassLoader classLoader) {
+      if (myLimit <= 0) {
+        return;
+      }
+
+      var miss = new Miss(new MissKey(path, classLoader, true));
+
+      synchronized (this) {
+        if (myMisses.putIfAbsent(miss.myKey, miss) != null) {
+          return;
+        }
+
+        while (myRing.size() >= myLimit) {
+          evict();
+        }
+
+        myRing.add(miss);
+      }
+    }
+
+    @NotNull
+    public Map<String, Integer> getRepeated() {
+      var counts = new HashMap<String, Integer>();
+
+      for (var miss : myMisses.values()) {
+        counts.merge(miss.myKey.myPath, miss.myCount.get(), Integer::sum);
+      }
+
+      var repeated = new ArrayList<Map.Entry<String, Integer>>();
+
+      for (var entry : counts.entrySet()) {
+        if (entry.getValue() > 1) {
+          repeated.add(entry);
+        }
+      }
+
+      repeated.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+      var result = new LinkedHashMap<String, Integer>();
+
+      for (var entry : repeated) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+
+      return result;
+    }
+
+    public synchronized void clear() {
+      myMisses.clear();
+      myRing.clear();
+      myHand = 0;
+    }
+
+    /**
+     * Evicts the first entry the clock hand finds unused since it last
+     * passed, or whose class loader was collected.
+     */
+    private void evict() {
+      while (true) {
+        if (myHand >= myRing.size()) {
+          myHand = 0;
+        }
+
+        var miss = myRing.get(myHand);
+
+        if (miss.myUses > 0 && !miss.myKey.isCollected()) {
+          miss.myUses--;
+          myHand++;
+          continue;
+        }
+
+        var last = myRing.removeLast();
+
+        if (last != miss) {
+          myRing.set(myHand, last);
+        }
+
+        myMisses.remove(miss.myKey, miss);
+        return;
+      }
+    }
+
+    private static final class Miss {
+
+      @NotNull
+      private final MissKey myKey;
+
+      private final AtomicInteger myCount = new AtomicInteger(1);
+      private int myUses = 1; // updated racily, only a hint for eviction
+
+      private Miss(@NotNull MissKey key) {
+        myKey = key;
+      }
+    }
+  }
+
+  /**
+   * Path and class loader identity. A stored key references the class loader
+   * weakly, and stops matching once it's collected.
+   */
+  private static final class MissKey {
+
+    @NotNull
+    private final String myPath;
+
+    @Nullable
+    private final Object myClassLoader; // or a weak reference to it
+
+    private final int myHash;
+
+    private MissKey(
+      @NotNull String path,
+      @Nullable ClassLoader classLoader,
+      boolean weak
+    ) {
+      myPath = path;
+      myClassLoader =
+        weak && classLoader != null
+          ? new WeakReference<>(classLoader)
+          : classLoader;
+      myHash = 31 * path.hashCode() + System.identityHashCode(classLoader);
+    }
+
+    @Nullable
+    private Object getClassLoader() {
+      return myClassLoader instanceof WeakReference<?> ref
+        ? ref.get()
+        : myClassLoader;
+    }
+
+    public boolean isCollected() {
+      return myClassLoader instanceof WeakReference<?> ref && ref.get() == null;
+    }
+
+    @Override
+    public int hashCode() {
+      return myHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      return (
+        o instanceof MissKey key &&
+        myHash == key.myHash &&
+        myPath.equals(key.myPath) &&
+        !isCollected() &&
+        !key.isCollected() &&
+        getClassLoader() == key.getClassLoader()
+      );
+    }
+  }
+
+  private static final class Statistics implements IconLoaderMXBean {
+
+    @Override
+    public long getIconsCacheHits() {
+      return IconStatistics.ICONS_CACHE.getHits();
+    }
+
+    @Override
+    public long getIconsCacheMisses() {
+      return IconStatistics.ICONS_CACHE.getMisses();
+    }
+
+    @Override
+    public int getIconsCacheSize() {
+      return ourIconsCache.size();
+    }
+
+    @Override
+    public long getScaledIconsCacheHits() {
+      return IconStatistics.SCALED_ICONS_CACHE.getHits();
+    }
+
+    @Override
+    public long getScaledIconsCacheMisses() {
+      return IconStatistics.SCALED_ICONS_CACHE.getMisses();
+    }
+
+    @Override
+    public long getDisabledIconsCacheHits() {
+      return IconStatistics.DISABLED_ICONS_CACHE.getHits();
+    }
+
+    @Override
+    public long getDisabledIconsCacheMisses() {
+      return IconStatistics.DISABLED_ICONS_CACHE.getMisses();
+    }
+
+    @Override
+    public long getResamplingKernelCacheHits() {
+      return IconStatistics.RESAMPLING_KERNELS.getHits();
+    }
+
+    @Override
+    public long getResamplingKernelCacheMisses() {
+      return IconStatistics.RESAMPLING_KERNELS.getMisses();
+    }
+
+    @Override
+    public int getResamplingKernelCacheSize() {
+      return Resampler.getCachedKernelCount();
+    }
+
+    @Override
+    public long getImageCacheHits() {
+      return IconStatistics.IMAGE_CACHE.getHits();
+    }
+
+    @Override
+    public long getImageCacheMisses() {
+      return IconStatistics.IMAGE_CACHE.getMisses();
+    }
+
+    @Override
+    public long getDecodes() {
+      return IconStatistics.DECODES.sum();
+    }
+
+    @Override
+    public long getVariantProbeFailures() {
+      return IconStatistics.VARIANT_PROBE_FAILURES.sum();
+    }
+
+    @Override
+    public long getVariantProbesSkipped() {
+      return IconStatistics.VARIANT_PROBES_SKIPPED.sum();
+    }
+
+    @Override
+    public long getResidentRasterBytes() {
+      var bytes = RasterCache.getInstance().getSize();
+
+      for (var icon : ourIconsCache.values()) {
+        var raster = icon.getStrongRaster();
+
+        if (raster != null) {
+          bytes += RasterCache.sizeOf(raster);
+        }
+      }
+
+      return bytes;
+    }
+
+    @Override
+    public int getResidentRasterCount() {
+      var count = RasterCache.getInstance().getCount();
+
+      for (var icon : ourIconsCache.values()) {
+        if (icon.getStrongRaster() != null) {
+          count++;
+        }
+      }
+
+      return count;
+    }
+
+    @Override
+    public long getBudgetedRasterBytes() {
+      return RasterCache.getInstance().getSize();
+    }
+
+    @Override
+    public long getRasterBudgetBytes() {
+      return RasterCache.getInstance().getBudget();
+    }
+
+    @Override
+    public long getLoadCount() {
+      return IconStatistics.LOAD_TIMES.getCount();
+    }
+
+    @Override
+    public long getLoadTimeP50Micros() {
+      return IconStatistics.LOAD_TIMES.getPercentileMicros(50);
+    }
+
+    @Override
+    public long getLoadTimeP90Micros() {
+      return IconStatistics.LOAD_TIMES.getPercentileMicros(90);
+    }
+
+    @Override
+    public long getLoadTimeP99Micros() {
+      return IconStatistics.LOAD_TIMES.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getLoadTimeMaxMicros() {
+      return IconStatistics.LOAD_TIMES.getPercentileMicros(100);
+    }
+
+    @Override
+    public void reset() {
+      IconStatistics.reset();
+    }
+  }
+
   private static class LabelHolder {
 
     /**
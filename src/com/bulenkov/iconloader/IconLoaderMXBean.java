@@ -0,0 +1,102 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+/**
+ * Icon cache and loading statistics, registered with the platform MBean
+ * server by {@link IconLoader#registerMBean()} under {@link #OBJECT_NAME}.
+ * Counters accumulate from the start or from the last {@link #reset()}.
+ */
+public interface IconLoaderMXBean {
+  String OBJECT_NAME = "com.bulenkov.iconloader:type=IconLoader";
+
+  long getIconsCacheHits();
+
+  long getIconsCacheMisses();
+
+  int getIconsCacheSize();
+
+  long getScaledIconsCacheHits();
+
+  long getScaledIconsCacheMisses();
+
+  long getDisabledIconsCacheHits();
+
+  long getDisabledIconsCacheMisses();
+
+  long getImageCacheHits();
+
+  long getImageCacheMisses();
+
+  /**
+   * @return the number of resampling weight tables taken from the cache
+   */
+  long getResamplingKernelCacheHits();
+
+  long getResamplingKernelCacheMisses();
+
+  int getResamplingKernelCacheSize();
+
+  long getDecodes();
+
+  /**
+   * @return the number of <code>@2x</code> and <code>_dark</code> variants
+   * that were probed and not found
+   */
+  long getVariantProbeFailures();
+
+  /**
+   * @return the number of variant probes avoided by the variant index
+   */
+  long getVariantProbesSkipped();
+
+  /**
+   * @return the total size of the rasters held by the icon caches: the
+   * budgeted ones, see {@link #getBudgetedRasterBytes()}, and the rasters of
+   * icons smaller than 50px, which cached icons hold strongly. An icon packed
+   * into the atlas counts its own area, not its page.
+   */
+  long getResidentRasterBytes();
+
+  /**
+   * @return the number of rasters counted by {@link #getResidentRasterBytes()}
+   */
+  int getResidentRasterCount();
+
+  /**
+   * @return the total size of the rasters held in the shared raster cache,
+   * which is limited by {@link #getRasterBudgetBytes()}
+   */
+  long getBudgetedRasterBytes();
+
+  long getRasterBudgetBytes();
+
+  long getLoadCount();
+
+  /**
+   * Load times are approximate: they're rounded up to a power of two.
+   */
+  long getLoadTimeP50Micros();
+
+  long getLoadTimeP90Micros();
+
+  long getLoadTimeP99Micros();
+
+  long getLoadTimeMaxMicros();
+
+  void reset();
+}
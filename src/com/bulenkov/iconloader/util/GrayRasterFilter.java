@@ -0,0 +1,107 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.BufferedImage;
+import javax.swing.GrayFilter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Applies the {@link GrayFilter} transformation directly to ARGB pixels
+ * instead of running an image producer. The brightness mapping is taken from
+ * a lookup table built once per filter. The output is the same as the output
+ * of a {@link GrayFilter} with the same parameters.
+ * <p>
+ * The filter has no state besides the table, so a single instance can
+ * process any number of images or pixel arrays, concurrently as well.
+ */
+public final class GrayRasterFilter implements RasterFilter {
+
+  private static final double[] RED = createWeights(0.30);
+  private static final double[] GREEN = createWeights(0.59);
+  private static final double[] BLUE = createWeights(0.11);
+
+  private final int[] myGrays = new int[256];
+
+  /**
+   * @see GrayFilter#GrayFilter(boolean, int)
+   */
+  public GrayRasterFilter(boolean brighter, int percent) {
+    for (var i = 0; i < myGrays.length; i++) {
+      var gray = brighter
+        ? (255 - ((255 - i) * (100 - percent) / 100))
+        : (i * (100 - percent) / 100);
+      gray = Math.max(0, Math.min(255, gray));
+      myGrays[i] = (gray << 16) | (gray << 8) | gray;
+    }
+  }
+
+  /**
+   * Filters <code>length</code> non-premultiplied ARGB pixels starting at
+   * <code>offset</code> in place.
+   */
+  public void filter(@NotNull int[] pixels, int offset, int length) {
+    var grays = myGrays;
+
+    for (int i = offset, end = offset + length; i < end; i++) {
+      var rgb = pixels[i];
+      var r = RED[(rgb >> 16) & 0xff];
+      var g = GREEN[(rgb >> 8) & 0xff];
+      var b = BLUE[rgb & 0xff];
+      pixels[i] = (rgb & 0xff000000) | grays[(int) ((r + g + b) / 3)];
+    }
+  }
+
+  @Override
+  public void filter(
+    @NotNull int[] pixels,
+    int offset,
+    int x,
+    int y,
+    int width
+  ) {
+    filter(pixels, offset, width);
+  }
+
+  /**
+   * Filters the image in place if it's a {@link BufferedImage#TYPE_INT_ARGB}
+   * image backed by a single array, otherwise returns a filtered copy.
+   *
+   * @return the filtered image
+   */
+  @NotNull
+  public BufferedImage filter(@NotNull BufferedImage image) {
+    image = ImageUtil.toIntArgb(image);
+    ImageUtil.filterInPlace(image, this);
+    return image;
+  }
+
+  /**
+   * The products are computed the same way as in {@link GrayFilter}, so that
+   * their sum rounds the same way.
+   */
+  @NotNull
+  private static double[] createWeights(double weight) {
+    var weights = new double[256];
+
+    for (var i = 0; i < weights.length; i++) {
+      weights[i] = weight * i;
+    }
+
+    return weights;
+  }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.JBHiDPIScaledImage;
+import com.bulenkov.iconloader.RetinaImage;
+import java.awt.AlphaComposite;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.Serial;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.ImageIcon;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Packs small icons into shared atlas pages, so that thousands of 16x16 icons
+ * don't each carry their own image and raster, and dense trees are painted
+ * from a few blit sources.
+ * <p>
+ * Enabled by the <code>icon.atlas</code> property. The atlas only keeps the
+ * page being filled; a full page stays alive as long as some icon packed
+ * into it is referenced. When a new page is started, the icons still alive
+ * on sparsely used pages are moved into it, so that those pages can be
+ * freed.
+ * <p>
+ * A packed icon pins its whole page, so it shouldn't be kept in a cache
+ * which accounts for the size of its entries; {@link #unpack(ImageIcon)}
+ * copies it out of the atlas.
+ */
+public final class IconAtlas {
+
+  public static final int PAGE_SIZE = 256;
+
+  /**
+   * Icons whose raster side is bigger than this are left as they are.
+   */
+  public static final int MAX_ICON_SIZE = 100;
+
+  /**
+   * A full page is compacted once its live icons cover less than this area.
+   */
+  private static final int COMPACTION_AREA = PAGE_SIZE * PAGE_SIZE / 4;
+
+  private static final List<WeakReference<Page>> ourPages = new ArrayList<>();
+  private static Page ourPage;
+  private static int ourShelfY;
+  private static int ourShelfHeight;
+  private static int ourShelfX;
+
+  private IconAtlas() {}
+
+  public static boolean isEnabled() {
+    return Registry.is("icon.atlas");
+  }
+
+  /**
+   * @return an icon which paints the same pixels from an atlas page, or
+   * <code>icon</code> itself if it can't be packed
+   */
+  @NotNull
+  public static ImageIcon pack(@NotNull ImageIcon icon) {
+    if (icon instanceof AtlasIcon) {
+      return icon;
+    }
+
+    var image = icon.getImage();
+    var width = icon.getIconWidth();
+    var height = icon.getIconHeight();
+    var raster = image;
+
+    if (image instanceof JBHiDPIScaledImage) {
+      raster = ((JBHiDPIScaledImage) image).getDelegate();
+
+      if (raster == null) {
+        return icon;
+      }
+    }
+
+    var rasterWidth = raster.getWidth(null);
+    var rasterHeight = raster.getHeight(null);
+
+    if (
+      width <= 0 ||
+      height <= 0 ||
+      rasterWidth % width != 0 ||
+      rasterWidth > MAX_ICON_SIZE ||
+      rasterHeight > MAX_ICON_SIZE
+    ) {
+      return icon;
+    }
+
+    synchronized (IconAtlas.class) {
+      var packed = new AtlasIcon(width, height, rasterWidth / width);
+
+      if (!fits(rasterWidth, rasterHeight)) {
+        startPage();
+        compact();
+      }
+
+      packed.mySlot = place(packed, raster, 0, 0);
+      return packed;
+    }
+  }
+
+  /**
+   * @return <code>icon</code>, or a copy with its own raster if it's packed
+   * into the atlas
+   */
+  @NotNull
+  public static ImageIcon unpack(@NotNull ImageIcon icon) {
+    if (!(icon instanceof AtlasIcon atlasIcon)) {
+      return icon;
+    }
+
+    var slot = atlasIcon.mySlot;
+    var width = atlasIcon.getRasterWidth();
+    var height = atlasIcon.getRasterHeight();
+
+    @SuppressWarnings("UndesirableClassUsage")
+    var copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    var g = copy.createGraphics();
+    g.setComposite(AlphaComposite.Src);
+    g.drawImage(
+      slot.myPage.myImage,
+      0,
+      0,
+      width,
+      height,
+      slot.myX,
+      slot.myY,
+      slot.myX + width,
+      slot.myY + height,
+      null
+    );
+    g.dispose();
+
+    return new JBImageIcon(atlasIcon.wrap(copy));
+  }
+
+  /**
+   * Detaches the page being filled, so that the next icon starts a new one.
+   */
+  public static synchronized void clear() {
+    ourPage = null;
+    ourPages.clear();
+  }
+
+  /**
+   * @return the number of pages that are still referenced
+   */
+  static synchronized int getPageCount() {
+    ourPages.removeIf(ref -> ref.get() == null);
+    return ourPages.size();
+  }
+
+  private static boolean fits(int width, int height) {
+    if (ourPage == null) {
+      return false;
+    }
+
+    return ourShelfX + width <= PAGE_SIZE
+      ? ourShelfY + height <= PAGE_SIZE
+      : ourShelfY + ourShelfHeight + height <= PAGE_SIZE;
+  }
+
+  private static void startPage() {
+    ourPage = new Page();
+    ourPages.add(new WeakReference<>(ourPage));
+    ourShelfX = 0;
+    ourShelfY = 0;
+    ourShelfHeight = 0;
+  }
+
+  /**
+   * Moves the live icons of sparsely used pages into the page being filled.
+   * A moved icon keeps painting from its old page until it switches to the
+   * new slot, so painting threads don't need to synchronize with this.
+   */
+  private static void compact() {
+    var moved = new ArrayList<AtlasIcon>();
+    var iterator = ourPages.iterator();
+
+    while (iterator.hasNext()) {
+      var page = iterator.next().get();
+
+      if (page == null) {
+        iterator.remove();
+      } else if (page != ourPage) {
+        var icons = page.getIcons();
+        var area = 0;
+
+        for (var icon : icons) {
+          area += icon.getRasterWidth() * icon.getRasterHeight();
+        }
+
+        if (area < COMPACTION_AREA) {
+          moved.addAll(icons);
+          iterator.remove();
+        }
+      }
+    }
+
+    for (var icon : moved) {
+      var slot = icon.mySlot;
+      icon.mySlot = place(icon, slot.myPage.myImage, slot.myX, slot.myY);
+    }
+  }
+
+  /**
+   * Copies the raster of <code>icon</code> from the given position of
+   * <code>source</code> into the page being filled, starting a new page if
+   * it's full.
+   */
+  @NotNull
+  private static Slot place(
+    @NotNull AtlasIcon icon,
+    @NotNull Image source,
+    int x,
+    int y
+  ) {
+    var width = icon.getRasterWidth();
+    var height = icon.getRasterHeight();
+
+    if (!fits(width, height)) {
+      startPage();
+    } else if (ourShelfX + width > PAGE_SIZE) {
+      ourShelfY += ourShelfHeight;
+      ourShelfX = 0;
+      ourShelfHeight = 0;
+    }
+
+    var g = ourPage.myImage.createGraphics();
+    g.setComposite(AlphaComposite.Src);
+    g.drawImage(
+      source,
+      ourShelfX,
+      ourShelfY,
+      ourShelfX + width,
+      ourShelfY + height,
+      x,
+      y,
+      x + width,
+      y + height,
+      null
+    );
+    g.dispose();
+
+    var slot = new Slot(ourPage, ourShelfX, ourShelfY);
+    ourPage.myIcons.add(new WeakReference<>(icon));
+    ourShelfX += width;
+    ourShelfHeight = Math.max(ourShelfHeight, height);
+    return slot;
+  }
+
+  private static final class Page {
+
+    @SuppressWarnings("UndesirableClassUsage")
+    private final BufferedImage myImage = new BufferedImage(
+      PAGE_SIZE,
+      PAGE_SIZE,
+      BufferedImage.TYPE_INT_ARGB
+    );
+
+    private final List<WeakReference<AtlasIcon>> myIcons = new ArrayList<>();
+
+    /**
+     * @return the icons packed into this page which are still referenced
+     */
+    @NotNull
+    public List<AtlasIcon> getIcons() {
+      var icons = new ArrayList<AtlasIcon>(myIcons.size());
+      var iterator = myIcons.iterator();
+
+      while (iterator.hasNext()) {
+        var icon = iterator.next().get();
+
+        if (icon == null || icon.mySlot.myPage != this) {
+          iterator.remove();
+        } else {
+          icons.add(icon);
+        }
+      }
+
+      return icons;
+    }
+  }
+
+  /**
+   * Position of an icon in a page, with the image {@link AtlasIcon#getImage()}
+   * returns for it.
+   */
+  private static final class Slot {
+
+    private final Page myPage;
+    private final int myX;
+    private final int myY;
+    private volatile Image myImage;
+
+    private Slot(@NotNull Page page, int x, int y) {
+      myPage = page;
+      myX = x;
+      myY = y;
+    }
+  }
+
+  /**
+   * A view of a sub-rectangle of an atlas page.
+   */
+  public static final class AtlasIcon extends ImageIcon {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final int myWidth;
+    private final int myHeight;
+    private final int myScale;
+
+    // atlas pages live in this process only
+    private transient volatile Slot mySlot;
+
+    private AtlasIcon(int width, int height, int scale) {
+      myWidth = width;
+      myHeight = height;
+      myScale = scale;
+    }
+
+    @Override
+    public int getIconWidth() {
+      return myWidth;
+    }
+
+    @Override
+    public int getIconHeight() {
+      return myHeight;
+    }
+
+    private int getRasterWidth() {
+      return myWidth * myScale;
+    }
+
+    private int getRasterHeight() {
+      return myHeight * myScale;
+    }
+
+    /**
+     * @return an image sharing the page raster, created once per position of
+     * the icon; Retina icons are wrapped the same way {@link ImageLoader} does
+     */
+    @Override
+    public Image getImage() {
+      var slot = mySlot;
+      var image = slot.myImage;
+
+      if (image == null) {
+        image =
+          wrap(
+            slot.myPage.myImage.getSubimage(
+              slot.myX,
+              slot.myY,
+              getRasterWidth(),
+              getRasterHeight()
+            )
+          );
+        slot.myImage = image;
+      }
+
+      return image;
+    }
+
+    @NotNull
+    private Image wrap(@NotNull BufferedImage image) {
+      return myScale > 1
+        ? RetinaImage.createFrom(image, myScale, ImageLoader.ourComponent)
+        : image;
+    }
+
+    @Override
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+      var slot = mySlot;
+      g.drawImage(
+        slot.myPage.myImage,
+        x,
+        y,
+        x + myWidth,
+        y + myHeight,
+        slot.myX,
+        slot.myY,
+        slot.myX + getRasterWidth(),
+        slot.myY + getRasterHeight(),
+        null
+      );
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Java Flight Recorder events of the icon loader. Duration and thread are
+ * recorded by JFR itself.
+ * <p>
+ * Events follow the usual JFR pattern: an event is created and begun
+ * unconditionally, which the JIT reduces to nothing while the event type is
+ * disabled, and its fields are only computed if
+ * {@link Event#shouldCommit()} returns true.
+ */
+public final class IconEvents {
+
+  private static final String CATEGORY = "Icon Loader";
+
+  private IconEvents() {}
+
+  @Name("com.bulenkov.iconloader.ImageLoad")
+  @Label("Image Load")
+  @Description("Image loaded by URL, with all its variant probes")
+  @Category(CATEGORY)
+  public static final class ImageLoadEvent extends Event {
+
+    @Label("URL")
+    public String url;
+
+    @Label("Variant")
+    @Description("Requested variant: dark, retina and scale flags")
+    public String variant;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+  }
+
+  @Name("com.bulenkov.iconloader.ImageRead")
+  @Label("Image Read")
+  @Description("Single image file read and decoded, or probed and missing")
+  @Category(CATEGORY)
+  public static final class ImageReadEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Scale")
+    public float scale;
+
+    @Label("Found")
+    public boolean found;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+  }
+
+  @Name("com.bulenkov.iconloader.ImageScale")
+  @Label("Image Scale")
+  @Category(CATEGORY)
+  public static final class ScaleEvent extends Event {
+
+    @Label("Method")
+    public String method;
+
+    @Label("Source Width")
+    public int sourceWidth;
+
+    @Label("Source Height")
+    public int sourceHeight;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+  }
+
+  @Name("com.bulenkov.iconloader.ImageFilter")
+  @Label("Image Filter")
+  @Category(CATEGORY)
+  public static final class FilterEvent extends Event {
+
+    @Label("Filter")
+    public String filter;
+
+    @Label("Raster")
+    @Description("Whether the filter ran directly on the pixel data")
+    public boolean raster;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+  }
+
+  @Name("com.bulenkov.iconloader.DisabledIcon")
+  @Label("Disabled Icon")
+  @Description("Disabled icon painted and grayed")
+  @Category(CATEGORY)
+  public static final class DisabledIconEvent extends Event {
+
+    @Label("Icon")
+    public String icon;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+  }
+
+  @Name("com.bulenkov.iconloader.ScaledIcon")
+  @Label("Scaled Icon")
+  @Description("Icon scaled and put into the scaled icon cache")
+  @Category(CATEGORY)
+  public static final class ScaledIconEvent extends Event {
+
+    @Label("URL")
+    public String url;
+
+    @Label("Scale")
+    public float scale;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+  }
+
+  /**
+   * Counts the bytes read through it, for {@link ImageReadEvent#bytesRead}.
+   */
+  public static final class CountingInputStream extends FilterInputStream {
+
+    private long myCount;
+
+    public CountingInputStream(@NotNull InputStream in) {
+      super(in);
+    }
+
+    public long getCount() {
+      return myCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+      var b = super.read();
+
+      if (b >= 0) {
+        myCount++;
+      }
+
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      var n = super.read(b, off, len);
+
+      if (n > 0) {
+        myCount += n;
+      }
+
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      var skipped = super.skip(n);
+      myCount += skipped;
+      return skipped;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Counters behind {@link com.bulenkov.iconloader.IconLoaderMXBean}. They are
+ * striped {@link LongAdder}s, so updating them from the painting threads
+ * doesn't add contention.
+ */
+public final class IconStatistics {
+
+  /**
+   * Lookups in the cache of icons by URL.
+   */
+  public static final CacheCounter ICONS_CACHE = new CacheCounter();
+
+  /**
+   * Lookups in the caches of scaled icons.
+   */
+  public static final CacheCounter SCALED_ICONS_CACHE = new CacheCounter();
+
+  /**
+   * Lookups in the cache of disabled icons.
+   */
+  public static final CacheCounter DISABLED_ICONS_CACHE = new CacheCounter();
+
+  /**
+   * Lookups in the cache of images loaded over HTTP.
+   */
+  public static final CacheCounter IMAGE_CACHE = new CacheCounter();
+
+  /**
+   * Lookups in the cache of {@link Resampler} weight tables.
+   */
+  public static final CacheCounter RESAMPLING_KERNELS = new CacheCounter();
+
+  /**
+   * Images decoded from PNG or other formats.
+   */
+  public static final LongAdder DECODES = new LongAdder();
+
+  /**
+   * <code>@2x</code> and <code>_dark</code> variants that were probed and
+   * turned out to be missing.
+   */
+  public static final LongAdder VARIANT_PROBE_FAILURES = new LongAdder();
+
+  /**
+   * Variants not probed because {@link VariantIndex} knows they're missing.
+   */
+  public static final LongAdder VARIANT_PROBES_SKIPPED = new LongAdder();
+
+  /**
+   * Time it takes to load the raster of an icon, including decoding,
+   * filtering and scaling.
+   */
+  public static final TimeHistogram LOAD_TIMES = new TimeHistogram();
+
+  private IconStatistics() {}
+
+  public static void reset() {
+    ICONS_CACHE.reset();
+    SCALED_ICONS_CACHE.reset();
+    DISABLED_ICONS_CACHE.reset();
+    IMAGE_CACHE.reset();
+    RESAMPLING_KERNELS.reset();
+    DECODES.reset();
+    VARIANT_PROBE_FAILURES.reset();
+    VARIANT_PROBES_SKIPPED.reset();
+    LOAD_TIMES.reset();
+  }
+
+  /**
+   * Counts the lookups in a cache and the lookups that missed, the hits are
+   * the difference.
+   */
+  public static final class CacheCounter {
+
+    private final LongAdder myLookups = new LongAdder();
+    private final LongAdder myMisses = new LongAdder();
+
+    public void lookup() {
+      myLookups.increment();
+    }
+
+    public void miss() {
+      myMisses.increment();
+    }
+
+    public long getHits() {
+      return Math.max(0, myLookups.sum() - myMisses.sum());
+    }
+
+    public long getMisses() {
+      return myMisses.sum();
+    }
+
+    public void reset() {
+      myLookups.reset();
+      myMisses.reset();
+    }
+  }
+
+  /**
+   * Histogram of durations with power-of-two buckets in microseconds, which
+   * gives percentiles within a factor of two at the cost of one
+   * {@link LongAdder} update per sample.
+   */
+  public static final class TimeHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final LongAdder[] myBuckets = new LongAdder[BUCKETS];
+
+    public TimeHistogram() {
+      for (var i = 0; i < BUCKETS; i++) {
+        myBuckets[i] = new LongAdder();
+      }
+    }
+
+    public void record(long nanos) {
+      var micros = Math.max(1, nanos / 1000);
+      var bucket = 64 - Long.numberOfLeadingZeros(micros) - 1;
+      myBuckets[Math.min(bucket, BUCKETS - 1)].increment();
+    }
+
+    public long getCount() {
+      var count = 0L;
+
+      for (var bucket : myBuckets) {
+        count += bucket.sum();
+      }
+
+      return count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the upper bound of the bucket the percentile falls into, in
+     * microseconds, or 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+      var counts = getCounts();
+      var total = 0L;
+
+      for (var count : counts) {
+        total += count;
+      }
+
+      if (total == 0) {
+        return 0;
+      }
+
+      var rank = (long) Math.ceil(total * percentile / 100);
+      var seen = 0L;
+
+      for (var i = 0; i < counts.length; i++) {
+        seen += counts[i];
+
+        if (seen >= rank) {
+          return (2L << i) - 1;
+        }
+      }
+
+      return (2L << (BUCKETS - 1)) - 1;
+    }
+
+    public void reset() {
+      for (var bucket : myBuckets) {
+        bucket.reset();
+      }
+    }
+
+    @NotNull
+    private long[] getCounts() {
+      var counts = new long[BUCKETS];
+
+      for (var i = 0; i < BUCKETS; i++) {
+        counts[i] = myBuckets[i].sum();
+      }
+
+      return counts;
+    }
+  }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.EventQueue;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Startup trace of icon resolution and loading, to find the icons and the
+ * call sites that dominate the time to the first frame.
+ * <p>
+ * Enabled with <code>-Dicon.trace=true</code>. The trace covers the first
+ * <code>icon.trace.seconds</code> (60 by default) after the first icon
+ * request. For every icon it records the requested path, the classes that
+ * requested it, the variant files probed, the time spent resolving it,
+ * reading files, decoding and converting (filtering, scaling) images, and
+ * whether any of this ran on the event dispatch thread. The report is
+ * written on shutdown to <code>icon.trace.file</code>, or to the standard
+ * error stream if the property isn't set.
+ * <p>
+ * Loading is attributed to an icon through a thread local set by
+ * {@link #beginLoad(URL)}, so that the decoder doesn't need to know which
+ * icon it decodes. When tracing is disabled every method returns right
+ * after checking a flag.
+ */
+public final class IconTrace {
+
+  private static final String MISSING = "missing:";
+
+  private static final long WINDOW = TimeUnit.SECONDS.toNanos(
+    Registry.getInt("icon.trace.seconds", 60)
+  );
+
+  private static boolean ourEnabled = Registry.is("icon.trace");
+
+  /**
+   * The time of the first icon request, which starts the window; 0 before.
+   */
+  private static final AtomicLong ourStart = new AtomicLong();
+
+  private static final ConcurrentMap<String, Entry> ourEntries =
+    new ConcurrentHashMap<>();
+  private static final ThreadLocal<Entry> ourCurrent = new ThreadLocal<>();
+
+  static {
+    if (ourEnabled) {
+      Runtime
+        .getRuntime()
+        .addShutdownHook(new Thread(IconTrace::writeReport, "Icon trace"));
+    }
+  }
+
+  private IconTrace() {}
+
+  /**
+   * @return true if icon requests are traced: tracing is on and the window
+   * either hasn't started yet or hasn't ended
+   */
+  public static boolean isEnabled() {
+    if (!ourEnabled) {
+      return false;
+    }
+
+    var start = ourStart.get();
+    return start == 0 || System.nanoTime() - start < WINDOW;
+  }
+
+  /**
+   * This method is for test purposes only
+   */
+  static void setEnabled(boolean enabled) {
+    ourEnabled = enabled;
+  }
+
+  /**
+   * Starts the window on the first icon request.
+   *
+   * @return the current time, or 0 if the request isn't traced
+   */
+  private static long startRequest() {
+    if (!ourEnabled) {
+      return 0;
+    }
+
+    var now = System.nanoTime();
+    ourStart.compareAndSet(0, now);
+    return now - ourStart.get() < WINDOW ? now : 0;
+  }
+
+  /**
+   * @return the start time for {@link #resolved}, or 0 if tracing is off
+   */
+  public static long startResolve() {
+    return startRequest();
+  }
+
+  /**
+   * Records a lookup of an icon by path.
+   *
+   * @param start     the value returned by {@link #startResolve()}
+   * @param requester the class or class loader the path was resolved with
+   * @param url       the resolved icon, or null if it wasn't found
+   */
+  public static void resolved(
+    long start,
+    @NotNull String path,
+    @NotNull String requester,
+    @Nullable URL url
+  ) {
+    if (start == 0) {
+      return;
+    }
+
+    var nanos = System.nanoTime() - start;
+    var entry = getEntry(url == null ? MISSING + path : url.toString());
+
+    synchronized (entry) {
+      entry.myPath = path;
+      entry.myRequesters.add(requester);
+      entry.myResolutions++;
+      entry.myResolveNanos += nanos;
+      entry.myEdt |= EventQueue.isDispatchThread();
+    }
+  }
+
+  /**
+   * Starts attributing reads, decodes and conversions on this thread to the
+   * icon. Nested loads are attributed to the outermost one.
+   *
+   * @return the start time for {@link #endLoad(long)}, 0 if the load isn't
+   * traced
+   */
+  public static long beginLoad(@NotNull URL url) {
+    if (!ourEnabled || ourCurrent.get() != null) {
+      return 0;
+    }
+
+    var start = startRequest();
+
+    if (start != 0) {
+      ourCurrent.set(getEntry(url.toString()));
+    }
+
+    return start;
+  }
+
+  public static void endLoad(long start) {
+    if (start == 0) {
+      return;
+    }
+
+    var entry = ourCurrent.get();
+    ourCurrent.remove();
+
+    synchronized (entry) {
+      entry.myLoads++;
+      entry.myLoadNanos += System.nanoTime() - start;
+      entry.myEdt |= EventQueue.isDispatchThread();
+    }
+  }
+
+  /**
+   * @return the start time of a step of the current load, 0 if there's no
+   * traced load on this thread
+   */
+  public static long now() {
+    return ourEnabled && ourCurrent.get() != null ? System.nanoTime() : 0;
+  }
+
+  public static void probed(@NotNull String path, boolean found) {
+    if (!ourEnabled) {
+      return;
+    }
+
+    var entry = ourCurrent.get();
+
+    if (entry != null) {
+      var name = path.substring(path.lastIndexOf('/') + 1);
+
+      synchronized (entry) {
+        entry.myProbes.add(name + (found ? "+" : "-"));
+      }
+    }
+  }
+
+  public static void read(long start) {
+    add(start, Step.READ);
+  }
+
+  public static void decoded(long start) {
+    add(start, Step.DECODE);
+  }
+
+  public static void converted(long start) {
+    add(start, Step.CONVERT);
+  }
+
+  private static void add(long start, @NotNull Step step) {
+    if (start == 0) {
+      return;
+    }
+
+    var nanos = System.nanoTime() - start;
+    var entry = ourCurrent.get();
+
+    if (entry == null) {
+      return;
+    }
+
+    synchronized (entry) {
+      switch (step) {
+        case READ -> entry.myReadNanos += nanos;
+        case DECODE -> entry.myDecodeNanos += nanos;
+        case CONVERT -> entry.myConvertNanos += nanos;
+      }
+    }
+  }
+
+  @NotNull
+  private static Entry getEntry(@NotNull String key) {
+    return ourEntries.computeIfAbsent(key, Entry::new);
+  }
+
+  private static void writeReport() {
+    var file = Registry.get("icon.trace.file", null);
+
+    if (file == null) {
+      // flushed, not closed: other shutdown hooks may still print
+      writeReport(new OutputStreamWriter(System.err));
+      return;
+    }
+
+    try (var writer = new FileWriter(file)) {
+      writeReport(writer);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes the icons sorted by the total time spent on them, followed by the
+   * requesters sorted the same way.
+   */
+  public static void writeReport(@NotNull Writer writer) {
+    var out = new PrintWriter(writer);
+    var entries = new ArrayList<Entry>();
+    var requesters = new HashMap<String, Long>();
+
+    for (var entry : ourEntries.values()) {
+      synchronized (entry) {
+        entries.add(entry.copy());
+      }
+    }
+
+    entries.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+
+    out.println("Icon trace, sorted by total time (ms)");
+    out.printf(
+      "%9s %9s %9s %9s %9s %7s %5s %4s  %s%n",
+      "total",
+      "resolve",
+      "read",
+      "decode",
+      "convert",
+      "lookups",
+      "loads",
+      "edt",
+      "icon"
+    );
+
+    var total = 0L;
+
+    for (var entry : entries) {
+      total += entry.getTotalNanos();
+      out.printf(
+        "%9.2f %9.2f %9.2f %9.2f %9.2f %7d %5d %4s  %s%n",
+        toMillis(entry.getTotalNanos()),
+        toMillis(entry.myResolveNanos),
+        toMillis(entry.myReadNanos),
+        toMillis(entry.myDecodeNanos),
+        toMillis(entry.myConvertNanos),
+        entry.myResolutions,
+        entry.myLoads,
+        entry.myEdt ? "yes" : "",
+        entry.myPath == null ? entry.myKey : entry.myPath
+      );
+
+      if (entry.myKey.startsWith(MISSING)) {
+        out.println("          not found");
+      } else if (entry.myPath != null) {
+        out.println("          url: " + entry.myKey);
+      }
+
+      if (!entry.myRequesters.isEmpty()) {
+        out.println("          requested by: " + entry.myRequesters);
+      }
+
+      if (!entry.myProbes.isEmpty()) {
+        out.println("          probes: " + entry.myProbes);
+      }
+
+      for (var requester : entry.myRequesters) {
+        requesters.merge(requester, entry.getTotalNanos(), Long::sum);
+      }
+    }
+
+    out.printf("%9.2f ms in %d icons%n%n", toMillis(total), entries.size());
+    out.println("Requesters, sorted by total time of their icons (ms)");
+
+    requesters
+      .entrySet()
+      .stream()
+      .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+      .forEach(e ->
+        out.printf("%9.2f  %s%n", toMillis(e.getValue()), e.getKey())
+      );
+
+    out.flush();
+  }
+
+  /**
+   * Forgets everything traced so far; the next icon request starts a new
+   * window.
+   */
+  public static void clear() {
+    ourEntries.clear();
+    ourStart.set(0);
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  private enum Step {
+    READ,
+    DECODE,
+    CONVERT,
+  }
+
+  private static final class Entry {
+
+    private final String myKey;
+    private final Set<String> myRequesters = new LinkedHashSet<>();
+    private final Set<String> myProbes = new LinkedHashSet<>();
+    private String myPath;
+    private int myResolutions;
+    private int myLoads;
+    private long myResolveNanos;
+    private long myLoadNanos;
+    private long myReadNanos;
+    private long myDecodeNanos;
+    private long myConvertNanos;
+    private boolean myEdt;
+
+    private Entry(@NotNull String key) {
+      myKey = key;
+    }
+
+    private long getTotalNanos() {
+      return myResolveNanos + myLoadNanos;
+    }
+
+    @NotNull
+    private Entry copy() {
+      var copy = new Entry(myKey);
+      copy.myRequesters.addAll(myRequesters);
+      copy.myProbes.addAll(myProbes);
+      copy.myPath = myPath;
+      copy.myResolutions = myResolutions;
+      copy.myLoads = myLoads;
+      copy.myResolveNanos = myResolveNanos;
+      copy.myLoadNanos = myLoadNanos;
+      copy.myReadNanos = myReadNanos;
+      copy.myDecodeNanos = myDecodeNanos;
+      copy.myConvertNanos = myConvertNanos;
+      copy.myEdt = myEdt;
+      return copy;
+    }
+  }
+}
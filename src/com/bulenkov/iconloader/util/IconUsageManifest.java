@@ -0,0 +1,267 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Icons painted during the first seconds of a session, saved on exit so that
+ * the next session can decode them in the background before the UI asks for
+ * them.
+ * <p>
+ * An entry is the absolute resource path of an icon, the identity of the
+ * class loader it was resolved with and the variant (dark, scale, Retina) it
+ * was painted in. Class loaders are identified by their name or the first URL
+ * of a {@link URLClassLoader}, so that they can be matched across restarts;
+ * icons of other class loaders aren't recorded.
+ * <p>
+ * The manifest is best-effort: a missing or broken file is treated as empty
+ * and I/O errors on saving are ignored.
+ */
+public final class IconUsageManifest {
+
+  private static final String HEADER = "# icon usage 1";
+  private static final char SEPARATOR = '\t';
+
+  @NotNull
+  private final File myFile;
+
+  private final long myDeadline;
+  private final int myLimit;
+  private final Set<Entry> myRecorded = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Set once the deadline has passed or the limit is reached, so that
+   * painting doesn't check them again.
+   */
+  private volatile boolean myStopped;
+
+  /**
+   * Entries of the previous session not replayed yet, by class loader.
+   */
+  private final Map<String, List<Entry>> myPending = new ConcurrentHashMap<>();
+
+  /**
+   * @param file    the manifest to replay and to save to
+   * @param seconds how long to record painted icons for, counting from now
+   * @param limit   the maximal number of recorded icons
+   */
+  public IconUsageManifest(@NotNull File file, int seconds, int limit) {
+    myFile = file;
+    myDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    myLimit = limit;
+
+    for (var entry : read(file)) {
+      myPending
+        .computeIfAbsent(entry.loader(), loader -> new ArrayList<>())
+        .add(entry);
+    }
+  }
+
+  /**
+   * Creates the manifest configured by the <code>icon.usage.file</code>
+   * property and registers a shutdown hook saving it. Icons are recorded for
+   * <code>icon.usage.seconds</code> (30 by default), up to
+   * <code>icon.usage.limit</code> (2048 by default).
+   *
+   * @return the manifest or null if the property isn't set
+   */
+  @Nullable
+  public static IconUsageManifest create() {
+    var file = Registry.get("icon.usage.file", null);
+
+    if (file == null) {
+      return null;
+    }
+
+    var manifest = new IconUsageManifest(
+      new File(file),
+      Registry.getInt("icon.usage.seconds", 30),
+      Registry.getInt("icon.usage.limit", 2048)
+    );
+
+    Runtime
+      .getRuntime()
+      .addShutdownHook(new Thread(manifest::save, "Icon usage manifest"));
+    return manifest;
+  }
+
+  public boolean isRecording() {
+    if (myStopped) {
+      return false;
+    }
+
+    if (System.nanoTime() - myDeadline >= 0 || myLimit <= 0) {
+      myStopped = true;
+      return false;
+    }
+
+    return true;
+  }
+
+  public void record(
+    @NotNull ClassLoader loader,
+    @NotNull String path,
+    @NotNull String variant
+  ) {
+    if (!isRecording()) {
+      return;
+    }
+
+    var id = getLoaderId(loader);
+
+    if (
+      id != null &&
+      myRecorded.add(new Entry(id, path, variant)) &&
+      myRecorded.size() >= myLimit
+    ) {
+      myStopped = true;
+    }
+  }
+
+  /**
+   * Removes the entries of the previous session recorded for the class
+   * loader, so that every entry is replayed at most once.
+   *
+   * @return the entries or null if there are none
+   */
+  @Nullable
+  public List<Entry> takePending(@NotNull ClassLoader loader) {
+    if (myPending.isEmpty()) {
+      return null;
+    }
+
+    var id = getLoaderId(loader);
+    return id == null ? null : myPending.remove(id);
+  }
+
+  /**
+   * Writes the icons recorded in this session, unless there are none, in
+   * which case the previous manifest is kept.
+   */
+  public void save() {
+    if (myRecorded.isEmpty()) {
+      return;
+    }
+
+    var lines = new ArrayList<String>();
+    lines.add(HEADER);
+
+    for (var entry : myRecorded) {
+      lines.add(
+        entry.loader() + SEPARATOR + entry.variant() + SEPARATOR + entry.path()
+      );
+    }
+
+    try {
+      var dir = myFile.getAbsoluteFile().getParentFile();
+      Files.createDirectories(dir.toPath());
+      var temp = File.createTempFile("icons", ".tmp", dir);
+
+      try {
+        Files.write(temp.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(
+          temp.toPath(),
+          myFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE
+        );
+      } finally {
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+      }
+    } catch (IOException | RuntimeException ignore) {}
+  }
+
+  @NotNull
+  private static List<Entry> read(@NotNull File file) {
+    var entries = new ArrayList<Entry>();
+
+    try {
+      var lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+      if (lines.isEmpty() || !HEADER.equals(lines.get(0))) {
+        return entries;
+      }
+
+      for (var line : lines.subList(1, lines.size())) {
+        var first = line.indexOf(SEPARATOR);
+        var second = line.indexOf(SEPARATOR, first + 1);
+
+        if (first > 0 && second > first) {
+          entries.add(
+            new Entry(
+              line.substring(0, first),
+              line.substring(second + 1),
+              line.substring(first + 1, second)
+            )
+          );
+        }
+      }
+    } catch (IOException | RuntimeException ignore) {}
+
+    return entries;
+  }
+
+  /**
+   * @return the name of the class loader or the first URL of a
+   * {@link URLClassLoader}, or null if the class loader has neither and
+   * can't be told apart from other instances of its class
+   */
+  @Nullable
+  public static String getLoaderId(@NotNull ClassLoader loader) {
+    var name = loader.getName();
+
+    if (name != null) {
+      return name;
+    }
+
+    if (loader instanceof URLClassLoader urlLoader) {
+      var urls = urlLoader.getURLs();
+
+      if (urls.length > 0) {
+        return urls[0].toString();
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * @param loader  see {@link #getLoaderId(ClassLoader)}
+   * @param path    the absolute resource path of the icon
+   * @param variant the dark, scale and Retina flags the icon was painted with
+   */
+  public record Entry(
+    @NotNull String loader,
+    @NotNull String path,
+    @NotNull String variant
+  ) {}
+}
@@ -0,0 +1,514 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.JBHiDPIScaledImage;
+import com.bulenkov.iconloader.RetinaImage;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.ImageFilter;
+import java.awt.image.RGBImageFilter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Persistent cache of decoded images: stores the final ARGB raster produced
+ * by {@link ImageLoader} (after filtering, Retina wrapping and scaling) so that
+ * the next start reads it from disk instead of decoding and scaling it again.
+ * <p>
+ * An entry is keyed by the resource URL, the modification stamp of the jar or
+ * file it comes from, the loading variant (dark, retina, scale) and the image
+ * filter. Only <code>file:</code> and <code>jar:file:</code> resources are
+ * cached, and only {@link RGBImageFilter}s, which are identified by their
+ * output on a fixed set of probe colors.
+ * <p>
+ * The cache is best-effort: any I/O problem falls back to regular loading.
+ * Entries are written on a background thread, so that a miss on the loading
+ * thread, often the event dispatch thread, costs one copy of the pixels and
+ * no I/O; an entry read is copied to the heap and the file is closed.
+ * <p>
+ * The total size of the entries is limited, in megabytes, by the
+ * <code>icon.disk.cache.mb</code> property, 64 by default. Reading an entry
+ * marks it as used; once the limit is exceeded, the least recently used
+ * entries are deleted. Entries of outdated jars are never read again, so
+ * they are the first to go.
+ */
+public final class ImageDiskCache {
+
+  private static final int MAGIC = 0x49434f4e; // "ICON"
+  private static final String EXTENSION = ".img";
+  private static final int VERSION = 1;
+  private static final int HEADER_INTS = 5; // magic, version, scale, w, h
+
+  private static final int[] FILTER_PROBES = createFilterProbes();
+
+  private static final Executor ourWriter = createWriter();
+
+  @NotNull
+  private final File myDir;
+
+  private final long myLimit;
+
+  @NotNull
+  private final Executor myWriter;
+
+  /**
+   * Keys of the entries queued for writing, so that an image loaded again
+   * before its entry is written isn't queued twice.
+   */
+  private final Set<String> myPending = ConcurrentHashMap.newKeySet();
+
+  /**
+   * The total size of the entries, or -1 until the directory is scanned.
+   */
+  private final AtomicLong mySize = new AtomicLong(-1);
+
+  public ImageDiskCache(@NotNull File dir) {
+    this(dir, Registry.getInt("icon.disk.cache.mb", 64) * 1024L * 1024L);
+  }
+
+  /**
+   * @param limit the maximum total size of the entries, in bytes
+   */
+  public ImageDiskCache(@NotNull File dir, long limit) {
+    this(dir, limit, ourWriter);
+  }
+
+  /**
+   * @param limit  the maximum total size of the entries, in bytes
+   * @param writer the executor writing the entries
+   */
+  public ImageDiskCache(
+    @NotNull File dir,
+    long limit,
+    @NotNull Executor writer
+  ) {
+    myDir = dir;
+    myLimit = limit;
+    myWriter = writer;
+  }
+
+  @NotNull
+  public File getDirectory() {
+    return myDir;
+  }
+
+  /**
+   * @param variant describes everything except the URL and the filter that
+   *                affects the loaded image, e.g. dark and scale flags
+   * @return the cached image or null if there's no valid entry
+   */
+  @Nullable
+  public Image get(
+    @NotNull URL url,
+    @NotNull String variant,
+    @Nullable ImageFilter filter
+  ) {
+    var key = createKey(url, variant, filter);
+
+    if (key == null) {
+      return null;
+    }
+
+    var file = getFile(key);
+
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try {
+      // read, not mapped: a mapping would keep the file open until it's
+      // collected, and an open file can't be deleted on Windows
+      var buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+      if (
+        buffer.remaining() < 4 * HEADER_INTS + 4 ||
+        buffer.getInt() != MAGIC ||
+        buffer.getInt() != VERSION
+      ) {
+        return null;
+      }
+
+      var scale = buffer.getInt();
+      var width = buffer.getInt();
+      var height = buffer.getInt();
+
+      if (!matchKey(buffer, keyBytes)) {
+        return null; // digest collision
+      }
+
+      if (
+        width <= 0 ||
+        height <= 0 ||
+        scale <= 0 ||
+        buffer.remaining() != 4L * width * height
+      ) {
+        return null;
+      }
+
+      @SuppressWarnings("UndesirableClassUsage")
+      var image = new BufferedImage(
+        width,
+        height,
+        BufferedImage.TYPE_INT_ARGB
+      );
+      buffer.asIntBuffer().get(getPixels(image));
+      //noinspection ResultOfMethodCallIgnored
+      file.setLastModified(System.currentTimeMillis());
+
+      return scale > 1
+        ? RetinaImage.createFrom(image, scale, ImageLoader.ourComponent)
+        : image;
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  public void put(
+    @NotNull URL url,
+    @NotNull String variant,
+    @Nullable ImageFilter filter,
+    @NotNull Image image
+  ) {
+    var key = createKey(url, variant, filter);
+
+    if (key == null) {
+      return;
+    }
+
+    var scale = 1;
+    var raster = image;
+
+    if (image instanceof JBHiDPIScaledImage) {
+      var delegate = ((JBHiDPIScaledImage) image).getDelegate();
+
+      if (delegate != null) {
+        var width = image.getWidth(null);
+        scale = width > 0 ? delegate.getWidth(null) / width : 1;
+        raster = delegate;
+      }
+    }
+
+    if (raster.getWidth(null) <= 0 || raster.getHeight(null) <= 0) {
+      return;
+    }
+
+    if (!myPending.add(key)) {
+      return;
+    }
+
+    var argb = toIntArgb(ImageUtil.toBufferedImage(raster));
+    var pixels = getPixels(argb);
+    var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    var entry = ByteBuffer.allocate(
+      4 * (HEADER_INTS + 1) + keyBytes.length + 4 * pixels.length
+    );
+    entry.putInt(MAGIC);
+    entry.putInt(VERSION);
+    entry.putInt(scale);
+    entry.putInt(argb.getWidth());
+    entry.putInt(argb.getHeight());
+    entry.putInt(keyBytes.length);
+    entry.put(keyBytes);
+    entry.asIntBuffer().put(pixels);
+
+    try {
+      myWriter.execute(() -> {
+        try {
+          write(key, entry.array());
+        } finally {
+          myPending.remove(key);
+        }
+      });
+    } catch (RuntimeException e) { // rejected
+      myPending.remove(key);
+    }
+  }
+
+  private void write(@NotNull String key, @NotNull byte[] entry) {
+    try {
+      Files.createDirectories(myDir.toPath());
+      var temp = File.createTempFile("icon", ".tmp", myDir);
+
+      try {
+        Files.write(temp.toPath(), entry);
+        Files.move(
+          temp.toPath(),
+          getFile(key).toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE
+        );
+        added(entry.length);
+      } finally {
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+      }
+    } catch (IOException | RuntimeException ignore) {}
+  }
+
+  /**
+   * @return the total size of the entries, in bytes
+   */
+  public long getSize() {
+    var size = mySize.get();
+    return size < 0 ? trim() : size;
+  }
+
+  private void added(long length) {
+    var size = mySize.get();
+
+    if (size < 0 || mySize.addAndGet(length) > myLimit) {
+      trim();
+    }
+  }
+
+  /**
+   * Scans the directory and deletes the least recently used entries until
+   * they take three quarters of the limit, so that the next few additions
+   * don't trigger another scan.
+   *
+   * @return the total size of the remaining entries
+   */
+  private synchronized long trim() {
+    var files = myDir.listFiles((dir, name) -> name.endsWith(EXTENSION));
+
+    if (files == null) {
+      mySize.set(0);
+      return 0;
+    }
+
+    var entries = new ArrayList<Map.Entry<File, Long>>(files.length);
+    var total = 0L;
+
+    for (var file : files) {
+      entries.add(Map.entry(file, file.lastModified()));
+      total += file.length();
+    }
+
+    if (total > myLimit) {
+      entries.sort(Map.Entry.comparingByValue());
+
+      for (var i = 0; i < entries.size() && total > myLimit / 4 * 3; i++) {
+        var file = entries.get(i).getKey();
+        var length = file.length();
+
+        if (file.delete()) {
+          total -= length;
+        }
+      }
+    }
+
+    mySize.set(total);
+    return total;
+  }
+
+  public void clear() {
+    var files = myDir.listFiles(
+      (dir, name) -> name.endsWith(EXTENSION) || name.endsWith(".tmp")
+    );
+
+    if (files != null) {
+      for (var file : files) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+    }
+
+    mySize.set(0);
+  }
+
+  @NotNull
+  private static Executor createWriter() {
+    var executor = new ThreadPoolExecutor(
+      1,
+      1,
+      1,
+      TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(),
+      ConcurrencyUtil.newNamedThreadFactory(
+        "Image disk cache writer",
+        true,
+        Thread.MIN_PRIORITY
+      )
+    );
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  @Nullable
+  private static String createKey(
+    @NotNull URL url,
+    @NotNull String variant,
+    @Nullable ImageFilter filter
+  ) {
+    var stamp = getSourceStamp(url);
+
+    if (stamp == null) {
+      return null;
+    }
+
+    var filterId = "";
+
+    if (filter instanceof RGBImageFilter) {
+      filterId = getFilterId((RGBImageFilter) filter);
+    } else if (filter != null) {
+      return null;
+    }
+
+    return url + "|" + stamp + "|" + variant + "|" + filterId;
+  }
+
+  /**
+   * The stamp of a file also covers its directory, so that adding a dark or
+   * @2x variant next to it invalidates the entry.
+   */
+  @Nullable
+  private static String getSourceStamp(@NotNull URL url) {
+    File file = null;
+
+    if (URLUtil.JAR_PROTOCOL.equals(url.getProtocol())) {
+      var paths = URLUtil.splitJarUrl(url.getFile());
+
+      if (paths != null) {
+        file = new File(URLUtil.unquote(paths.first));
+      }
+    } else if (URLUtil.FILE_PROTOCOL.equals(url.getProtocol())) {
+      file = new File(URLUtil.unquote(url.getFile()));
+    }
+
+    if (file == null || !file.isFile()) {
+      return null;
+    }
+
+    var stamp = file.lastModified() + ":" + file.length();
+
+    if (URLUtil.FILE_PROTOCOL.equals(url.getProtocol())) {
+      var parent = file.getParentFile();
+
+      if (parent != null) {
+        stamp += ":" + parent.lastModified();
+      }
+    }
+
+    return stamp;
+  }
+
+  @NotNull
+  private static String getFilterId(@NotNull RGBImageFilter filter) {
+    var hash = 1;
+
+    for (var i = 0; i < FILTER_PROBES.length; i++) {
+      hash = 31 * hash + filter.filterRGB(i, i, FILTER_PROBES[i]);
+    }
+
+    return filter.getClass().getName() + "#" + Integer.toHexString(hash);
+  }
+
+  private static int[] createFilterProbes() {
+    var probes = new int[64];
+
+    for (var i = 0; i < probes.length; i++) {
+      var a = (i & 3) * 85;
+      var c = i * 37 & 0xff;
+      probes[i] = (a << 24) | (c << 16) | ((255 - c) << 8) | (c * 7 & 0xff);
+    }
+
+    return probes;
+  }
+
+  @NotNull
+  private File getFile(@NotNull String key) {
+    try {
+      var digest = MessageDigest
+        .getInstance("SHA-1")
+        .digest(key.getBytes(StandardCharsets.UTF_8));
+      var name = new StringBuilder(2 * digest.length + 4);
+
+      for (var b : digest) {
+        name.append(Character.forDigit((b >> 4) & 0xf, 16));
+        name.append(Character.forDigit(b & 0xf, 16));
+      }
+
+      return new File(myDir, name.append(EXTENSION).toString());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean matchKey(
+    @NotNull ByteBuffer buffer,
+    @NotNull byte[] keyBytes
+  ) {
+    if (buffer.getInt() != keyBytes.length) {
+      return false;
+    }
+
+    for (var b : keyBytes) {
+      if (!buffer.hasRemaining() || buffer.get() != b) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @NotNull
+  private static int[] getPixels(@NotNull BufferedImage image) {
+    return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+  }
+
+  @NotNull
+  private static BufferedImage toIntArgb(@NotNull BufferedImage image) {
+    if (
+      image.getType() == BufferedImage.TYPE_INT_ARGB &&
+      getPixels(image).length == image.getWidth() * image.getHeight()
+    ) {
+      return image;
+    }
+
+    @SuppressWarnings("UndesirableClassUsage")
+    var argb = new BufferedImage(
+      image.getWidth(),
+      image.getHeight(),
+      BufferedImage.TYPE_INT_ARGB
+    );
+    var g = argb.createGraphics();
+    g.drawImage(image, 0, 0, null);
+    g.dispose();
+    return argb;
+  }
+}
@@ -19,10 +19,14 @@ package com.bulenkov.iconloader.util;
 import com.bulenkov.iconloader.IconLoader;
 import com.bulenkov.iconloader.RetinaImage;
 import java.awt.Component;
+import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.MediaTracker;
 import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
 import java.awt.image.ImageFilter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
@@ -30,8 +34,14 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.swing.Icon;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -44,8 +54,14 @@ public class ImageLoader implements Serializable {
 
   //  private static final Log LOG = Logger.getLogger("#com.intellij.util.ImageLoader");
 
-  private static final ConcurrentMap<String, Image> ourCache =
-    new ConcurrentSoftValueHashMap<>();
+  /**
+   * Images loaded over HTTP, their memory is managed by {@link RasterCache}.
+   */
+  private static final ConcurrentMap<String, RasterCache.Ref<Image>> ourCache =
+    new ConcurrentHashMap<>();
+
+  @Nullable
+  private static volatile ImageDiskCache ourDiskCache = createDiskCache();
 
   private static class ImageDesc {
 
@@ -61,6 +77,9 @@ public class ImageLoader implements Serializable {
 
       UNDEFINED;
 
+      /**
+       * Decodes with the {@link Decoder} selected for this process.
+       */
       public Image load(URL url, InputStream stream, float scale) {
         return ImageLoader.load(stream, (int) scale);
       }
@@ -92,6 +111,35 @@ public class ImageLoader implements Serializable {
 
     @Nullable
     public Image load() throws IOException, URISyntaxException {
+      var event = new IconEvents.ImageReadEvent();
+      event.begin();
+      Image image = null;
+
+      try {
+        image = read(event);
+        return image;
+      } finally {
+        IconTrace.probed(path, image != null);
+
+        if (event.shouldCommit()) {
+          event.path = path;
+          event.scale = scale;
+          event.found = image != null;
+
+          if (image != null) {
+            event.width = ImageUtil.getRealWidth(image);
+            event.height = ImageUtil.getRealHeight(image);
+          }
+
+          event.commit();
+        }
+      }
+    }
+
+    @Nullable
+    private Image read(@NotNull IconEvents.ImageReadEvent event)
+      throws IOException, URISyntaxException {
+      var openStart = IconTrace.now();
       String cacheKey = null;
       InputStream stream = null;
       URL url = null;
@@ -117,20 +165,42 @@ public class ImageLoader implements Serializable {
           connection.addRequestProperty("User-Agent", "IntelliJ");
 
           cacheKey = path;
-          var image = ourCache.get(cacheKey);
+          var image = SoftReference.deref(ourCache.get(cacheKey));
+          IconStatistics.IMAGE_CACHE.lookup();
 
           if (image != null) {
             return image;
           }
+
+          IconStatistics.IMAGE_CACHE.miss();
         }
 
         stream = connection.getInputStream();
       }
 
+      IconTrace.read(openStart);
+      IconEvents.CountingInputStream counter = null;
+
+      if (event.isEnabled()) {
+        stream = counter = new IconEvents.CountingInputStream(stream);
+      }
+
       var image = type.load(url, stream, scale);
 
+      if (counter != null) {
+        event.bytesRead = counter.getCount();
+      }
+
       if (image != null && cacheKey != null) {
-        ourCache.put(cacheKey, image);
+        var key = cacheKey;
+        var ref = RasterCache
+          .getInstance()
+          .add(image, evicted -> ourCache.remove(key, evicted));
+        var old = ourCache.put(key, ref);
+
+        if (old != null) {
+          old.release();
+        }
       }
 
       return image;
@@ -158,12 +228,23 @@ public class ImageLoader implements Serializable {
           var image = desc.load();
 
           if (image == null) {
+            if (!desc.original) {
+              IconStatistics.VARIANT_PROBE_FAILURES.increment();
+            }
+
             continue;
           }
 
           //          LOG.debug("Loaded image: " + desc);
-          return converters.convert(image, desc);
-        } catch (IOException ignore) {} catch (URISyntaxException e) {
+          var convertStart = IconTrace.now();
+          image = converters.convert(image, desc);
+          IconTrace.converted(convertStart);
+          return image;
+        } catch (IOException e) {
+          if (!desc.original) {
+            IconStatistics.VARIANT_PROBE_FAILURES.increment();
+          }
+        } catch (URISyntaxException e) {
           throw new RuntimeException(e);
         }
       }
@@ -194,20 +275,25 @@ public class ImageLoader implements Serializable {
         //          vars.add(new ImageDesc(name + ".svg", cls, UIUtil.isRetina() ? 2f : scale, ImageDesc.Type.SVG));
         //        }
 
+        var variants = VariantIndex.getVariants(file, cls);
+
         if (dark && retina) {
           vars.add(
+            variants,
             new ImageDesc(name + "@2x_dark." + ext, cls, 2f, ImageDesc.Type.PNG)
           );
         }
 
         if (dark) {
           vars.add(
+            variants,
             new ImageDesc(name + "_dark." + ext, cls, 1f, ImageDesc.Type.PNG)
           );
         }
 
         if (retina) {
           vars.add(
+            variants,
             new ImageDesc(name + "@2x." + ext, cls, 2f, ImageDesc.Type.PNG)
           );
         }
@@ -216,6 +302,23 @@ public class ImageLoader implements Serializable {
       vars.add(new ImageDesc(file, cls, 1f, ImageDesc.Type.PNG, true));
       return vars;
     }
+
+    /**
+     * Adds a variant unless the {@link VariantIndex} knows it doesn't exist.
+     */
+    private void add(@Nullable Set<String> variants, @NotNull ImageDesc desc) {
+      if (variants == null || variants.contains(getFileName(desc))) {
+        add(desc);
+      } else {
+        IconStatistics.VARIANT_PROBES_SKIPPED.increment();
+      }
+    }
+
+    @NotNull
+    private static String getFileName(@NotNull ImageDesc desc) {
+      var name = desc.path.substring(desc.path.lastIndexOf('/') + 1);
+      return desc.cls == null ? URLUtil.unquote(name) : name;
+    }
   }
 
   private interface ImageConverter {
@@ -260,6 +363,75 @@ public class ImageLoader implements Serializable {
 
   public static final Component ourComponent = new Component() {};
 
+  private static final long PNG_SIGNATURE = 0x89504e470d0a1a0aL;
+  private static final int PNG_IHDR = 0x49484452;
+
+  @Nullable
+  private static ImageDiskCache createDiskCache() {
+    var dir = System.getProperty("icon.disk.cache.dir");
+    return dir == null || dir.isEmpty()
+      ? null
+      : new ImageDiskCache(new File(dir));
+  }
+
+  /**
+   * Enables the persistent cache of decoded images in the given directory,
+   * or disables it if <code>dir</code> is null. By default the cache is
+   * located in the <code>icon.disk.cache.dir</code> directory if the property
+   * is set.
+   */
+  public static void setDiskCacheDirectory(@Nullable File dir) {
+    ourDiskCache = dir == null ? null : new ImageDiskCache(dir);
+  }
+
+  @Nullable
+  public static ImageDiskCache getDiskCache() {
+    return ourDiskCache;
+  }
+
+  @Nullable
+  private static Image loadCached(
+    @NotNull URL url,
+    @NotNull String variant,
+    @Nullable ImageFilter filter,
+    @NotNull Supplier<Image> loader
+  ) {
+    var event = new IconEvents.ImageLoadEvent();
+    event.begin();
+
+    var traceStart = IconTrace.beginLoad(url);
+    var cache = ourDiskCache;
+    Image image;
+
+    try {
+      image = cache == null ? null : cache.get(url, variant, filter);
+
+      if (image == null) {
+        image = loader.get();
+
+        if (image != null && cache != null) {
+          cache.put(url, variant, filter, image);
+        }
+      }
+    } finally {
+      IconTrace.endLoad(traceStart);
+    }
+
+    if (event.shouldCommit()) {
+      event.url = url.toString();
+      event.variant = variant;
+
+      if (image != null) {
+        event.width = ImageUtil.getRealWidth(image);
+        event.height = ImageUtil.getRealHeight(image);
+      }
+
+      event.commit();
+    }
+
+    return image;
+  }
+
   private static boolean waitForImage(Image image) {
     if (image == null) {
       return false;
@@ -307,35 +479,92 @@ public class ImageLoader implements Serializable {
     // For any scale factor > 1.0, always prefer retina images, because downscaling
     // retina images provides a better result than upscaling non-retina images.
     final var loadRetinaImages = UIUtil.isRetina() || scaleImages;
+    final var dark = UIUtil.isUnderDarcula();
+    final var variant =
+      "dark=" + dark + ",retina=" + UIUtil.isRetina() + ",scale=" + scaleFactor;
+
+    return loadCached(
+      url,
+      variant,
+      filter,
+      () ->
+        ImageDescList
+          .create(
+            url.toString(),
+            null,
+            dark,
+            loadRetinaImages,
+            allowFloatScaling
+          )
+          .load(
+            ImageConverterChain
+              .create()
+              .withFilter(filter)
+              .withRetina()
+              .with((source, desc) -> {
+                if (
+                  source != null && scaleImages
+                  /*&& desc.type != ImageDesc.Type.SVG*/
+                ) {
+                  if (desc.path.contains("@2x")) return scaleImage(
+                    source,
+                    scaleFactor / 2.0f
+                  ); // divide by 2.0 as Retina images are 2x the resolution.
+                  else return scaleImage(source, scaleFactor);
+                }
+
+                return source;
+              })
+          )
+    );
+  }
 
-    return ImageDescList
-      .create(
-        url.toString(),
-        null,
-        UIUtil.isUnderDarcula(),
-        loadRetinaImages,
-        allowFloatScaling
-      )
-      .load(
-        ImageConverterChain
-          .create()
-          .withFilter(filter)
-          .withRetina()
-          .with((source, desc) -> {
-            if (
-              source != null && scaleImages
-              /*&& desc.type != ImageDesc.Type.SVG*/
-            ) {
-              if (desc.path.contains("@2x")) return scaleImage(
-                source,
-                scaleFactor / 2.0f
-              ); // divide by 2.0 as Retina images are 2x the resolution.
-              else return scaleImage(source, scaleFactor);
-            }
+  /**
+   * Reads the size of the image {@link #loadFromUrl(URL, boolean)} would
+   * return, from the PNG header and without decoding the image.
+   *
+   * @return the image size in user space or null if it can't be determined
+   */
+  @Nullable
+  public static Dimension loadImageSize(
+    @NotNull URL url,
+    boolean allowFloatScaling
+  ) {
+    var header = new byte[24];
+
+    try (var stream = URLUtil.openStream(url)) {
+      var read = 0;
+
+      while (read < header.length) {
+        var n = stream.read(header, read, header.length - read);
+
+        if (n < 0) {
+          return null;
+        }
+
+        read += n;
+      }
+    } catch (IOException e) {
+      return null;
+    }
+
+    var buffer = ByteBuffer.wrap(header);
+
+    if (buffer.getLong() != PNG_SIGNATURE || buffer.getInt(12) != PNG_IHDR) {
+      return null;
+    }
 
-            return source;
-          })
-      );
+    var width = buffer.getInt(16);
+    var height = buffer.getInt(20);
+    var scaleFactor = calcScaleFactor(allowFloatScaling);
+
+    if (scaleFactor > 1.0f && !UIUtil.isRetina()) {
+      // see loadFromUrl(URL, boolean, ImageFilter)
+      width = (int) (scaleFactor * width);
+      height = (int) (scaleFactor * height);
+    }
+
+    return new Dimension(width, height);
   }
 
   private static float calcScaleFactor(boolean allowFloatScaling) {
@@ -359,12 +588,12 @@ public class ImageLoader implements Serializable {
     var width = (int) (scale * w);
     var height = (int) (scale * h);
 
-    // Using "QUALITY" instead of "ULTRA_QUALITY" results in images that are less blurry
-    // because ultra quality performs a few more passes when scaling, which introduces blurriness
-    // when the scaling factor is relatively small (i.e. <= 3.0f) -- which is the case here.
+    // A single bicubic pass, like "QUALITY" does when upscaling, but with
+    // the resampling kernels cached: icons are scaled by the same few factors
+    // over and over.
     return Scalr.resize(
       ImageUtil.toBufferedImage(image),
-      Scalr.Method.QUALITY,
+      Scalr.Method.BICUBIC,
       width,
       height
     );
@@ -382,9 +611,18 @@ public class ImageLoader implements Serializable {
     boolean retina,
     ImageFilter filter
   ) {
-    return ImageDescList
-      .create(url.toString(), null, dark, retina, true)
-      .load(ImageConverterChain.create().withFilter(filter).withRetina());
+    final var variant =
+      "dark=" + dark + ",retina=" + UIUtil.isRetina() + ",@2x=" + retina;
+
+    return loadCached(
+      url,
+      variant,
+      filter,
+      () ->
+        ImageDescList
+          .create(url.toString(), null, dark, retina, true)
+          .load(ImageConverterChain.create().withFilter(filter).withRetina())
+    );
   }
 
   @Nullable
@@ -431,12 +669,24 @@ public class ImageLoader implements Serializable {
   private static Image load(
     @NotNull final InputStream inputStream,
     final int scale
+  ) {
+    return load(inputStream, scale, Decoder.get());
+  }
+
+  static Image load(
+    @NotNull final InputStream inputStream,
+    final int scale,
+    @NotNull Decoder decoder
   ) {
     if (scale <= 0) {
       throw new IllegalArgumentException("Scale must be 1 or greater");
     }
 
+    IconStatistics.DECODES.increment();
+
     try (var outputStream = new BufferExposingByteArrayOutputStream()) {
+      var readStart = IconTrace.now();
+
       try (inputStream) {
         var buffer = new byte[1024];
 
@@ -451,10 +701,11 @@ public class ImageLoader implements Serializable {
         }
       }
 
-      var image = Toolkit
-        .getDefaultToolkit()
-        .createImage(outputStream.getInternalBuffer(), 0, outputStream.size());
-      waitForImage(image);
+      IconTrace.read(readStart);
+
+      var decodeStart = IconTrace.now();
+      var image = decode(outputStream, decoder);
+      IconTrace.decoded(decodeStart);
       return image;
     } catch (Exception ex) {
       ex.printStackTrace();
@@ -463,6 +714,94 @@ public class ImageLoader implements Serializable {
     return null;
   }
 
+  private static Image decode(
+    @NotNull BufferExposingByteArrayOutputStream outputStream,
+    @NotNull Decoder decoder
+  ) throws IOException {
+    var bytes = outputStream.getInternalBuffer();
+    var size = outputStream.size();
+
+    if (decoder == Decoder.PNG) {
+      var image = PngIconDecoder.decode(bytes, size);
+
+      if (image != null) {
+        return image;
+      }
+    }
+
+    if (decoder != Decoder.TOOLKIT) {
+      var image = decodeWithImageIO(bytes, size);
+
+      if (image != null) {
+        return image;
+      }
+    }
+
+    var image = Toolkit.getDefaultToolkit().createImage(bytes, 0, size);
+    waitForImage(image);
+    return image;
+  }
+
+  /**
+   * Decodes the image synchronously on the calling thread. The image is
+   * returned in the layout the reader produces, e.g.
+   * {@link BufferedImage#TYPE_4BYTE_ABGR} for an RGBA PNG: readers can't
+   * decode into a premultiplied raster, and converting would cost another
+   * copy. {@link ImageUtil#toBufferedImage} returns it as is.
+   *
+   * @return the decoded image or null if ImageIO can't read the format
+   */
+  @Nullable
+  private static BufferedImage decodeWithImageIO(byte[] bytes, int size)
+    throws IOException {
+    // ImageIO.read closes the stream
+    return ImageIO.read(
+      new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes, 0, size))
+    );
+  }
+
+  /**
+   * Engine used to decode image bytes, selected by the
+   * <code>icon.decoder</code> property, which is read once.
+   */
+  enum Decoder {
+    /**
+     * {@link Toolkit#createImage(byte[], int, int)}, waiting for the
+     * asynchronous image producer with a {@link MediaTracker}.
+     */
+    TOOLKIT,
+
+    /**
+     * Synchronous {@link ImageIO} decoding, see {@link #decodeWithImageIO}.
+     */
+    IMAGEIO,
+
+    /**
+     * {@link PngIconDecoder} for icon-sized PNGs, {@link #IMAGEIO} otherwise.
+     */
+    PNG;
+
+    private static final Decoder ourSelected = select(
+      Registry.get("icon.decoder", TOOLKIT.name())
+    );
+
+    @NotNull
+    static Decoder get() {
+      return ourSelected;
+    }
+
+    @NotNull
+    private static Decoder select(@NotNull String name) {
+      for (var decoder : values()) {
+        if (decoder.name().equalsIgnoreCase(name)) {
+          return decoder;
+        }
+      }
+
+      return TOOLKIT;
+    }
+  }
+
   public static boolean isGoodSize(final Icon icon) {
     return IconLoader.isGoodSize(icon);
   }
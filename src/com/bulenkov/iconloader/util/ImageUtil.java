@@ -17,11 +17,15 @@
 package com.bulenkov.iconloader.util;
 
 import com.bulenkov.iconloader.JBHiDPIScaledImage;
+import java.awt.AlphaComposite;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.image.FilteredImageSource;
 import java.awt.image.ImageFilter;
+import java.awt.image.RGBImageFilter;
+import java.awt.image.SinglePixelPackedSampleModel;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -30,18 +34,36 @@ import org.jetbrains.annotations.NotNull;
 public class ImageUtil {
 
   public static BufferedImage toBufferedImage(@NotNull Image image) {
+    image = getRaw(image);
+
+    if (image instanceof BufferedImage) {
+      return (BufferedImage) image;
+    }
+
+    return copyToIntArgb(image);
+  }
+
+  /**
+   * @return the image a HiDPI image wraps, or the image itself
+   */
+  @NotNull
+  private static Image getRaw(@NotNull Image image) {
     if (image instanceof JBHiDPIScaledImage) {
       Image img = ((JBHiDPIScaledImage) image).getDelegate();
 
       if (img != null) {
-        image = img;
+        return img;
       }
     }
 
-    if (image instanceof BufferedImage) {
-      return (BufferedImage) image;
-    }
+    return image;
+  }
 
+  /**
+   * @return a {@link BufferedImage#TYPE_INT_ARGB} copy of the image
+   */
+  @NotNull
+  private static BufferedImage copyToIntArgb(@NotNull Image image) {
     @SuppressWarnings("UndesirableClassUsage")
     var bufferedImage = new BufferedImage(
       image.getWidth(null),
@@ -49,44 +71,107 @@ public class ImageUtil {
       BufferedImage.TYPE_INT_ARGB
     );
     var g = bufferedImage.createGraphics();
+    g.setComposite(AlphaComposite.Src);
     g.drawImage(image, 0, 0, null);
     g.dispose();
     return bufferedImage;
   }
 
   public static int getRealWidth(@NotNull Image image) {
-    if (image instanceof JBHiDPIScaledImage) {
-      Image img = ((JBHiDPIScaledImage) image).getDelegate();
+    return getRaw(image).getWidth(null);
+  }
 
-      if (img != null) {
-        image = img;
-      }
+  public static int getRealHeight(@NotNull Image image) {
+    return getRaw(image).getHeight(null);
+  }
+
+  /**
+   * Returns a filtered copy of the image. {@link RasterFilter}s and
+   * {@link RGBImageFilter}s are applied directly to the pixels of a
+   * {@link BufferedImage#TYPE_INT_ARGB} copy, other filters go through
+   * {@link FilteredImageSource}.
+   */
+  public static Image filter(Image image, ImageFilter filter) {
+    if (image == null || filter == null) {
+      return image;
     }
 
-    return image.getWidth(null);
-  }
+    var event = new IconEvents.FilterEvent();
+    event.begin();
 
-  public static int getRealHeight(@NotNull Image image) {
-    if (image instanceof JBHiDPIScaledImage) {
-      Image img = ((JBHiDPIScaledImage) image).getDelegate();
+    var rasterFilter = RasterFilter.of(filter);
+    Image result;
 
-      if (img != null) {
-        image = img;
-      }
+    if (rasterFilter != null) {
+      var copy = copyToIntArgb(getRaw(image));
+      filterInPlace(copy, rasterFilter);
+      result = copy;
+    } else {
+      result =
+        Toolkit
+          .getDefaultToolkit()
+          .createImage(
+            new FilteredImageSource(toBufferedImage(image).getSource(), filter)
+          );
+    }
+
+    if (event.shouldCommit()) {
+      event.filter = filter.getClass().getName();
+      event.raster = rasterFilter != null;
+      event.width = getRealWidth(image);
+      event.height = getRealHeight(image);
+      event.commit();
     }
 
-    return image.getHeight(null);
+    return result;
   }
 
-  public static Image filter(Image image, ImageFilter filter) {
-    if (image == null || filter == null) {
-      return image;
+  /**
+   * Applies the filter to the pixels of the image, row by row.
+   *
+   * @param image a {@link BufferedImage#TYPE_INT_ARGB} image, possibly a
+   *              subimage of a bigger one
+   */
+  public static void filterInPlace(
+    @NotNull BufferedImage image,
+    @NotNull RasterFilter filter
+  ) {
+    if (!isIntArgb(image)) {
+      throw new IllegalArgumentException("Not an INT_ARGB image: " + image);
     }
 
-    return Toolkit
-      .getDefaultToolkit()
-      .createImage(
-        new FilteredImageSource(toBufferedImage(image).getSource(), filter)
+    var raster = image.getRaster();
+    var model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+    var buffer = (DataBufferInt) raster.getDataBuffer();
+    var pixels = buffer.getData();
+    var stride = model.getScanlineStride();
+    var offset =
+      buffer.getOffset() +
+      model.getOffset(
+        -raster.getSampleModelTranslateX(),
+        -raster.getSampleModelTranslateY()
       );
+
+    for (var y = 0; y < image.getHeight(); y++) {
+      filter.filter(pixels, offset + y * stride, 0, y, image.getWidth());
+    }
+  }
+
+  /**
+   * @return a copy of the image which can be passed to
+   * {@link #filterInPlace(BufferedImage, RasterFilter)}, or the image itself
+   * if it already can
+   */
+  @NotNull
+  public static BufferedImage toIntArgb(@NotNull BufferedImage image) {
+    return isIntArgb(image) ? image : copyToIntArgb(image);
+  }
+
+  private static boolean isIntArgb(@NotNull BufferedImage image) {
+    return (
+      image.getType() == BufferedImage.TYPE_INT_ARGB &&
+      image.getRaster().getDataBuffer() instanceof DataBufferInt &&
+      image.getRaster().getDataBuffer().getNumBanks() == 1
+    );
   }
 }
@@ -0,0 +1,439 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * PNG decoder tuned for icons: non-interlaced images up to
+ * {@link #MAX_SIZE} pixels, 8-bit RGB(A) and gray with alpha, and 1/2/4/8-bit
+ * gray and palette images.
+ * <p>
+ * IDAT data is inflated directly from the file bytes by a per-thread
+ * {@link Inflater}, one scanline at a time into two reused row buffers, and
+ * every row is unfiltered and converted straight into the
+ * {@link BufferedImage#TYPE_INT_ARGB} raster. Anything else makes
+ * {@link #decode} return null, so that the caller can use a generic decoder.
+ */
+public final class PngIconDecoder {
+
+  public static final int MAX_SIZE = 256;
+
+  private static final long SIGNATURE = 0x89504e470d0a1a0aL;
+  private static final int IHDR = 0x49484452;
+  private static final int PLTE = 0x504c5445;
+  private static final int TRNS = 0x74524e53;
+  private static final int IDAT = 0x49444154;
+  private static final int IEND = 0x49454e44;
+
+  private static final int GRAY = 0;
+  private static final int RGB = 2;
+  private static final int PALETTE = 3;
+  private static final int GRAY_ALPHA = 4;
+  private static final int RGBA = 6;
+
+  private static final ThreadLocal<PngIconDecoder> ourDecoders =
+    ThreadLocal.withInitial(PngIconDecoder::new);
+
+  private final Inflater myInflater = new Inflater();
+  private final int[] myPalette = new int[256];
+  private byte[] myRow = new byte[0];
+  private byte[] myPrevRow = new byte[0];
+
+  // state of the image being decoded
+  private byte[] myBytes;
+  private int myEnd;
+  private int myPos; // next chunk to look at for IDAT data
+  private int myTransparent; // tRNS sample value for gray/RGB, or -1
+
+  private PngIconDecoder() {}
+
+  /**
+   * @return the decoded image or null if the bytes are not a PNG this decoder
+   * supports
+   */
+  @Nullable
+  public static BufferedImage decode(@NotNull byte[] bytes, int size) {
+    var decoder = ourDecoders.get();
+
+    try {
+      return decoder.doDecode(bytes, size);
+    } catch (DataFormatException | RuntimeException e) {
+      return null;
+    } finally {
+      decoder.myBytes = null;
+      decoder.myInflater.reset();
+    }
+  }
+
+  @Nullable
+  private BufferedImage doDecode(@NotNull byte[] bytes, int size)
+    throws DataFormatException {
+    if (size < 8 + 25 || readLong(bytes, 0) != SIGNATURE) {
+      return null;
+    }
+
+    myBytes = bytes;
+    myEnd = size;
+    myTransparent = -1;
+
+    // IHDR must be the first chunk
+    if (readInt(bytes, 8) != 13 || readInt(bytes, 12) != IHDR) {
+      return null;
+    }
+
+    var width = readInt(bytes, 16);
+    var height = readInt(bytes, 20);
+    var bitDepth = bytes[24] & 0xff;
+    var colorType = bytes[25] & 0xff;
+    var interlace = bytes[28] & 0xff;
+
+    if (
+      width <= 0 ||
+      height <= 0 ||
+      width > MAX_SIZE ||
+      height > MAX_SIZE ||
+      interlace != 0 ||
+      !isSupported(colorType, bitDepth)
+    ) {
+      return null;
+    }
+
+    var paletteSize = 0;
+    Arrays.fill(myPalette, 0xff000000);
+    myPos = 8 + 8 + 13 + 4;
+
+    // header chunks up to the first IDAT
+    while (true) {
+      if (myPos + 8 > myEnd) {
+        return null;
+      }
+
+      var length = readInt(bytes, myPos);
+      var type = readInt(bytes, myPos + 4);
+      var data = myPos + 8;
+
+      if (length < 0 || data + length + 4 > myEnd) {
+        return null;
+      }
+
+      if (type == IDAT) {
+        break;
+      }
+
+      if (type == PLTE) {
+        paletteSize = Math.min(length / 3, 256);
+
+        for (var i = 0; i < paletteSize; i++) {
+          var p = data + 3 * i;
+          myPalette[i] =
+            0xff000000 |
+            ((bytes[p] & 0xff) << 16) |
+            ((bytes[p + 1] & 0xff) << 8) |
+            (bytes[p + 2] & 0xff);
+        }
+      } else if (type == TRNS) {
+        readTransparency(colorType, bitDepth, data, length);
+      } else if (type == IEND) {
+        return null;
+      }
+
+      myPos = data + length + 4;
+    }
+
+    if (colorType == PALETTE && paletteSize == 0) {
+      return null;
+    }
+
+    var channels = getChannels(colorType);
+    var bitsPerPixel = channels * bitDepth;
+    var bpp = Math.max(1, bitsPerPixel / 8);
+    var rowBytes = (width * bitsPerPixel + 7) / 8;
+    ensureRowCapacity(rowBytes + 1);
+
+    @SuppressWarnings("UndesirableClassUsage")
+    var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    var pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    var row = myRow;
+    var prev = myPrevRow;
+    Arrays.fill(prev, 0, rowBytes + 1, (byte) 0);
+
+    for (var y = 0; y < height; y++) {
+      if (!inflate(row, rowBytes + 1)) {
+        return null;
+      }
+
+      if (!unfilter(row, prev, rowBytes, bpp)) {
+        return null;
+      }
+
+      convert(row, pixels, y * width, width, colorType, bitDepth);
+
+      var swap = row;
+      row = prev;
+      prev = swap;
+    }
+
+    return image;
+  }
+
+  private static boolean isSupported(int colorType, int bitDepth) {
+    return switch (colorType) {
+      case GRAY, PALETTE -> bitDepth <= 8 && Integer.bitCount(bitDepth) == 1;
+      case RGB, GRAY_ALPHA, RGBA -> bitDepth == 8;
+      default -> false;
+    };
+  }
+
+  private static int getChannels(int colorType) {
+    return switch (colorType) {
+      case RGB -> 3;
+      case GRAY_ALPHA -> 2;
+      case RGBA -> 4;
+      default -> 1;
+    };
+  }
+
+  private void readTransparency(
+    int colorType,
+    int bitDepth,
+    int data,
+    int length
+  ) {
+    var bytes = myBytes;
+
+    if (colorType == PALETTE) {
+      for (var i = 0; i < Math.min(length, 256); i++) {
+        var alpha = (bytes[data + i] & 0xff) << 24;
+        myPalette[i] = (myPalette[i] & 0xffffff) | alpha;
+      }
+    } else if (colorType == GRAY && length >= 2) {
+      myTransparent = readShort(bytes, data) & ((1 << bitDepth) - 1);
+    } else if (colorType == RGB && length >= 6) {
+      myTransparent =
+        ((readShort(bytes, data) & 0xff) << 16) |
+        ((readShort(bytes, data + 2) & 0xff) << 8) |
+        (readShort(bytes, data + 4) & 0xff);
+    }
+  }
+
+  private void ensureRowCapacity(int capacity) {
+    if (myRow.length < capacity) {
+      myRow = new byte[capacity];
+      myPrevRow = new byte[capacity];
+    }
+  }
+
+  /**
+   * Inflates exactly <code>length</code> bytes, feeding the inflater with the
+   * data of consecutive IDAT chunks.
+   */
+  private boolean inflate(@NotNull byte[] row, int length)
+    throws DataFormatException {
+    var offset = 0;
+
+    while (offset < length) {
+      var n = myInflater.inflate(row, offset, length - offset);
+
+      if (n == 0) {
+        if (myInflater.finished() || myInflater.needsDictionary()) {
+          return false;
+        }
+
+        if (myInflater.needsInput() && !feedIdat()) {
+          return false;
+        }
+      }
+
+      offset += n;
+    }
+
+    return true;
+  }
+
+  private boolean feedIdat() {
+    var bytes = myBytes;
+
+    while (myPos + 8 <= myEnd) {
+      var length = readInt(bytes, myPos);
+      var type = readInt(bytes, myPos + 4);
+      var data = myPos + 8;
+
+      if (length < 0 || data + length + 4 > myEnd) {
+        return false;
+      }
+
+      myPos = data + length + 4;
+
+      if (type == IDAT && length > 0) {
+        myInflater.setInput(bytes, data, length);
+        return true;
+      }
+
+      if (type == IEND) {
+        return false;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Reverses the scanline filter in place; <code>row[0]</code> is the filter
+   * type and the pixel data starts at index 1 in both rows.
+   */
+  private static boolean unfilter(
+    @NotNull byte[] row,
+    @NotNull byte[] prev,
+    int rowBytes,
+    int bpp
+  ) {
+    switch (row[0]) {
+      case 0 -> {}
+      case 1 -> {
+        for (var i = 1 + bpp; i <= rowBytes; i++) {
+          row[i] += row[i - bpp];
+        }
+      }
+      case 2 -> {
+        for (var i = 1; i <= rowBytes; i++) {
+          row[i] += prev[i];
+        }
+      }
+      case 3 -> {
+        for (var i = 1; i <= rowBytes; i++) {
+          var left = i > bpp ? row[i - bpp] & 0xff : 0;
+          row[i] += (byte) ((left + (prev[i] & 0xff)) >>> 1);
+        }
+      }
+      case 4 -> {
+        for (var i = 1; i <= rowBytes; i++) {
+          var a = i > bpp ? row[i - bpp] & 0xff : 0;
+          var b = prev[i] & 0xff;
+          var c = i > bpp ? prev[i - bpp] & 0xff : 0;
+          row[i] += (byte) paeth(a, b, c);
+        }
+      }
+      default -> {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static int paeth(int a, int b, int c) {
+    var p = a + b - c;
+    var pa = Math.abs(p - a);
+    var pb = Math.abs(p - b);
+    var pc = Math.abs(p - c);
+
+    if (pa <= pb && pa <= pc) {
+      return a;
+    }
+
+    return pb <= pc ? b : c;
+  }
+
+  private void convert(
+    @NotNull byte[] row,
+    @NotNull int[] pixels,
+    int offset,
+    int width,
+    int colorType,
+    int bitDepth
+  ) {
+    switch (colorType) {
+      case RGBA -> {
+        for (int x = 0, i = 1; x < width; x++, i += 4) {
+          pixels[offset + x] =
+            ((row[i + 3] & 0xff) << 24) |
+            ((row[i] & 0xff) << 16) |
+            ((row[i + 1] & 0xff) << 8) |
+            (row[i + 2] & 0xff);
+        }
+      }
+      case RGB -> {
+        for (int x = 0, i = 1; x < width; x++, i += 3) {
+          var rgb =
+            ((row[i] & 0xff) << 16) |
+            ((row[i + 1] & 0xff) << 8) |
+            (row[i + 2] & 0xff);
+          pixels[offset + x] = rgb == myTransparent ? rgb : 0xff000000 | rgb;
+        }
+      }
+      case GRAY_ALPHA -> {
+        for (int x = 0, i = 1; x < width; x++, i += 2) {
+          var v = row[i] & 0xff;
+          pixels[offset + x] =
+            ((row[i + 1] & 0xff) << 24) | (v << 16) | (v << 8) | v;
+        }
+      }
+      case GRAY -> {
+        var max = (1 << bitDepth) - 1;
+
+        for (var x = 0; x < width; x++) {
+          var sample = getSample(row, x, bitDepth);
+          var v = sample * 255 / max;
+          var alpha = sample == myTransparent ? 0 : 0xff000000;
+          pixels[offset + x] = alpha | (v << 16) | (v << 8) | v;
+        }
+      }
+      case PALETTE -> {
+        for (var x = 0; x < width; x++) {
+          pixels[offset + x] = myPalette[getSample(row, x, bitDepth)];
+        }
+      }
+    }
+  }
+
+  private static int getSample(@NotNull byte[] row, int x, int bitDepth) {
+    if (bitDepth == 8) {
+      return row[1 + x] & 0xff;
+    }
+
+    var bit = x * bitDepth;
+    var shift = 8 - bitDepth - (bit & 7);
+    return ((row[1 + (bit >> 3)] & 0xff) >> shift) & ((1 << bitDepth) - 1);
+  }
+
+  private static int readShort(@NotNull byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+  }
+
+  private static int readInt(@NotNull byte[] bytes, int offset) {
+    return (
+      ((bytes[offset] & 0xff) << 24) |
+      ((bytes[offset + 1] & 0xff) << 16) |
+      ((bytes[offset + 2] & 0xff) << 8) |
+      (bytes[offset + 3] & 0xff)
+    );
+  }
+
+  private static long readLong(@NotNull byte[] bytes, int offset) {
+    return (
+      ((long) readInt(bytes, offset) << 32) |
+      (readInt(bytes, offset + 4) & 0xffffffffL)
+    );
+  }
+}
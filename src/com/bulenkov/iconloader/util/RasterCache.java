@@ -0,0 +1,309 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.Image;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Memory budget shared by the icon caches, replacing soft references. A
+ * cache keeps a {@link Ref} to each raster it holds. Once the total size of
+ * the rasters exceeds the budget, the least valuable ones are evicted and their
+ * refs start returning null, as a cleared soft reference would.
+ * <p>
+ * Eviction follows the generalized CLOCK policy. Every ref has a small use
+ * counter which {@link Ref#get()} increments. The clock hand walks over the
+ * refs, decrementing the counters, and evicts the first ref whose counter is
+ * zero. Frequently painted icons survive a burst of one-off loads this way,
+ * and memory is released gradually instead of all at once as it is with soft
+ * references.
+ * <p>
+ * The budget is set in megabytes with the <code>icon.cache.mb</code>
+ * property, 64 by default. A raster bigger than the whole budget would only
+ * evict everything including itself, so it's kept out of the budget behind a
+ * soft reference instead, which the GC clears under memory pressure.
+ */
+public final class RasterCache {
+
+  private static final int MAX_USES = 3;
+
+  private static final RasterCache ourInstance = new RasterCache(
+    Registry.getInt("icon.cache.mb", 64) * 1024L * 1024L
+  );
+
+  private final long myBudget;
+  private final List<Ref<?>> myRing = new ArrayList<>();
+  private int myHand;
+  private long mySize;
+
+  public RasterCache(long budget) {
+    myBudget = budget;
+  }
+
+  @NotNull
+  public static RasterCache getInstance() {
+    return ourInstance;
+  }
+
+  /**
+   * Registers an icon with the cache.
+   *
+   * @param onEvict called with the ref once the icon is evicted, without any
+   *                lock held, e.g. to remove the ref from a map
+   * @return the ref to keep instead of the icon
+   */
+  @NotNull
+  public <T extends Icon> Ref<T> add(
+    @NotNull T icon,
+    @Nullable Consumer<? super Ref<T>> onEvict
+  ) {
+    return add(icon, sizeOf(icon), onEvict);
+  }
+
+  /**
+   * Registers an image with the cache.
+   *
+   * @see #add(Icon, Consumer)
+   */
+  @NotNull
+  public <T extends Image> Ref<T> add(
+    @NotNull T image,
+    @Nullable Consumer<? super Ref<T>> onEvict
+  ) {
+    return add(image, sizeOf(image), onEvict);
+  }
+
+  @NotNull
+  private <T> Ref<T> add(
+    @NotNull T value,
+    long size,
+    @Nullable Consumer<? super Ref<T>> onEvict
+  ) {
+    if (size > myBudget) {
+      return new Ref<>(this, new SoftReference<>(value));
+    }
+
+    var ref = new Ref<>(this, value, size, onEvict);
+    List<Ref<?>> evicted;
+
+    synchronized (this) {
+      ref.myIndex = myRing.size();
+      myRing.add(ref);
+      mySize += size;
+      evicted = evict();
+    }
+
+    for (var victim : evicted) {
+      victim.evicted();
+    }
+
+    return ref;
+  }
+
+  /**
+   * @return the total size of the rasters in the cache, in bytes
+   */
+  public synchronized long getSize() {
+    return mySize;
+  }
+
+  public long getBudget() {
+    return myBudget;
+  }
+
+  public synchronized int getCount() {
+    return myRing.size();
+  }
+
+  /**
+   * Evicts everything, for example when the rasters become outdated.
+   */
+  public void clear() {
+    List<Ref<?>> evicted;
+
+    synchronized (this) {
+      evicted = new ArrayList<>(myRing);
+      myRing.clear();
+      myHand = 0;
+      mySize = 0;
+
+      for (var ref : evicted) {
+        ref.myIndex = -1;
+        ref.myValue = null;
+      }
+    }
+
+    for (var ref : evicted) {
+      ref.evicted();
+    }
+  }
+
+  @NotNull
+  private List<Ref<?>> evict() {
+    List<Ref<?>> evicted = List.of();
+
+    while (mySize > myBudget && !myRing.isEmpty()) {
+      if (myHand >= myRing.size()) {
+        myHand = 0;
+      }
+
+      var ref = myRing.get(myHand);
+
+      if (ref.myUses > 0) {
+        ref.myUses--;
+        myHand++;
+        continue;
+      }
+
+      remove(myHand);
+
+      if (evicted.isEmpty()) {
+        evicted = new ArrayList<>();
+      }
+
+      evicted.add(ref);
+    }
+
+    return evicted;
+  }
+
+  /**
+   * Removes the ref at the given position by moving the last ref into its
+   * place, so that removal doesn't shift the ring.
+   */
+  private void remove(int index) {
+    var ref = myRing.get(index);
+    var last = myRing.removeLast();
+
+    if (last != ref) {
+      myRing.set(index, last);
+      last.myIndex = index;
+    }
+
+    ref.myIndex = -1;
+    ref.myValue = null;
+    mySize -= ref.mySize;
+  }
+
+  private synchronized void release(@NotNull Ref<?> ref) {
+    if (ref.myIndex >= 0) {
+      remove(ref.myIndex);
+    }
+  }
+
+  public static long sizeOf(@NotNull Icon icon) {
+    if (icon instanceof ImageIcon) {
+      var image = ((ImageIcon) icon).getImage();
+
+      if (image != null) {
+        return sizeOf(image);
+      }
+    }
+
+    return 4L * icon.getIconWidth() * icon.getIconHeight();
+  }
+
+  public static long sizeOf(@NotNull Image image) {
+    return (
+      4L *
+      Math.max(0, ImageUtil.getRealWidth(image)) *
+      Math.max(0, ImageUtil.getRealHeight(image))
+    );
+  }
+
+  /**
+   * Handle of a cached value, which returns null once the value is evicted.
+   * The value of an oversized ref is softly reachable and isn't in the ring;
+   * its eviction callback is never called.
+   */
+  public static final class Ref<T> implements Getter<T> {
+
+    private final RasterCache myCache;
+    private final long mySize;
+    @Nullable
+    private final Consumer<? super Ref<T>> myOnEvict;
+    @Nullable
+    private volatile T myValue;
+    @Nullable
+    private final SoftReference<T> mySoftValue;
+    private int myUses = 1; // updated racily, only a hint for eviction
+    private int myIndex = -1; // guarded by myCache
+
+    private Ref(
+      @NotNull RasterCache cache,
+      @NotNull T value,
+      long size,
+      @Nullable Consumer<? super Ref<T>> onEvict
+    ) {
+      myCache = cache;
+      myValue = value;
+      mySize = size;
+      myOnEvict = onEvict;
+      mySoftValue = null;
+    }
+
+    private Ref(@NotNull RasterCache cache, @NotNull SoftReference<T> value) {
+      myCache = cache;
+      mySize = 0;
+      myOnEvict = null;
+      mySoftValue = value;
+    }
+
+    /**
+     * @return the value, or null if it was evicted or released
+     */
+    @Nullable
+    @Override
+    public T get() {
+      if (mySoftValue != null) {
+        return mySoftValue.get();
+      }
+
+      var value = myValue;
+
+      if (value != null && myUses < MAX_USES) {
+        myUses++;
+      }
+
+      return value;
+    }
+
+    /**
+     * Removes the value from the cache when its owner no longer needs it,
+     * without calling the eviction callback.
+     */
+    public void release() {
+      if (mySoftValue != null) {
+        mySoftValue.clear();
+      } else if (myValue != null) {
+        myCache.release(this);
+      }
+    }
+
+    private void evicted() {
+      if (myOnEvict != null) {
+        myOnEvict.accept(this);
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.RGBImageFilter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Image filter working in place on ARGB pixel data, without the image
+ * producer and consumer protocol of {@link java.awt.image.ImageFilter}.
+ * Implementations are shared by all the images they filter, possibly on
+ * several threads at once, so they must not keep state between calls.
+ *
+ * @see ImageUtil#filter(java.awt.Image, java.awt.image.ImageFilter)
+ */
+public interface RasterFilter {
+  /**
+   * Filters a row of non-premultiplied ARGB pixels in place.
+   *
+   * @param offset the index of the first pixel in <code>pixels</code>
+   * @param x      the column of the first pixel in the image
+   * @param y      the row of the pixels in the image
+   * @param width  the number of pixels
+   */
+  void filter(@NotNull int[] pixels, int offset, int x, int y, int width);
+
+  /**
+   * @return the raster version of <code>filter</code>: the filter itself if
+   * it's a {@link RasterFilter}, a wrapper calling
+   * {@link RGBImageFilter#filterRGB(int, int, int)} of a clone of an
+   * {@link RGBImageFilter}, or null for any other filter. The clone keeps
+   * filters with state from racing, like
+   * {@link java.awt.image.FilteredImageSource} does by cloning the filter
+   * for every image.
+   */
+  @Nullable
+  static RasterFilter of(@Nullable Object filter) {
+    if (filter instanceof RasterFilter) {
+      return (RasterFilter) filter;
+    }
+
+    if (filter instanceof RGBImageFilter original) {
+      var rgbFilter = (RGBImageFilter) original.clone();
+      return (pixels, offset, x, y, width) -> {
+        for (int i = offset, end = offset + width; i < end; i++) {
+          pixels[i] = rgbFilter.filterRGB(x + i - offset, y, pixels[i]);
+        }
+      };
+    }
+
+    return null;
+  }
+}
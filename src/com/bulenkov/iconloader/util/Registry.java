@@ -26,6 +26,11 @@ public class Registry {
     return "true".equalsIgnoreCase(value);
   }
 
+  public static String get(String key, String defaultValue) {
+    final var value = System.getProperty(key);
+    return value == null || value.isEmpty() ? defaultValue : value;
+  }
+
   public static Float getFloat(String key) {
     try {
       return Float.parseFloat(System.getProperty(key));
@@ -33,4 +38,12 @@ public class Registry {
       return null;
     }
   }
+
+  public static int getInt(String key, int defaultValue) {
+    try {
+      return Integer.parseInt(System.getProperty(key));
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
 }
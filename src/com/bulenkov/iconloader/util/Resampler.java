@@ -0,0 +1,579 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Separable image resampling in plain Java: the image is scaled horizontally
+ * and then vertically, in a single pass in each direction, by convolving the
+ * pixels with a {@link Filter} widened by the downscale factor, so that every
+ * source pixel contributes to the result.
+ * <p>
+ * The weights of every destination column and row are computed once per
+ * scale into a {@link Kernel} and applied in fixed point. Kernels are cached
+ * by source size, destination size and filter, so that scaling many images of
+ * the same size, e.g. icons, computes them once. Colors are weighted
+ * by alpha as well, so that transparent pixels don't bleed their color into
+ * the neighbouring ones, without the rounding errors of 8 bit premultiplied
+ * pixels.
+ */
+public final class Resampler {
+
+  private static final int FRACTION_BITS = 14;
+  private static final int ONE = 1 << FRACTION_BITS;
+  private static final int HALF = ONE >> 1;
+
+  /**
+   * Kernels bigger than this, in weights, are used once and dropped: they
+   * are only needed to scale big images, which isn't repeated as often and
+   * costs much more than computing the kernel anyway.
+   */
+  private static final int MAX_CACHED_WEIGHTS = 64 * 1024;
+
+  /**
+   * The most recently used kernels, up to <code>imgscalr.kernelCacheSize</code>
+   * (128 by default).
+   */
+  private static final Map<KernelKey, Kernel> ourKernels = createKernelCache(
+    Registry.getInt("imgscalr.kernelCacheSize", 128)
+  );
+
+  public enum Filter {
+    /**
+     * Averages the source pixels covered by a destination pixel, the same as
+     * {@link java.awt.image.AreaAveragingScaleFilter}.
+     */
+    BOX(0.5) {
+      @Override
+      double weight(double x) {
+        return x >= -0.5 && x < 0.5 ? 1 : 0;
+      }
+    },
+    /**
+     * Triangle filter, linear interpolation when scaling up.
+     */
+    BILINEAR(1) {
+      @Override
+      double weight(double x) {
+        x = Math.abs(x);
+        return x < 1 ? 1 - x : 0;
+      }
+    },
+    /**
+     * Keys cubic convolution with a = -0.5, sharper than {@link #BILINEAR}.
+     */
+    BICUBIC(2) {
+      @Override
+      double weight(double x) {
+        x = Math.abs(x);
+
+        if (x < 1) {
+          return (1.5 * x - 2.5) * x * x + 1;
+        }
+
+        if (x < 2) {
+          return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+        }
+
+        return 0;
+      }
+    },
+    /**
+     * Windowed sinc with three lobes, the sharpest of the filters at the cost
+     * of slight ringing around hard edges.
+     */
+    LANCZOS3(3) {
+      @Override
+      double weight(double x) {
+        return x > -3 && x < 3 ? sinc(x) * sinc(x / 3) : 0;
+      }
+    };
+
+    private final double mySupport;
+
+    Filter(double support) {
+      mySupport = support;
+    }
+
+    /**
+     * @return the radius, in source pixels when scaling up, outside of which
+     * {@link #weight(double)} is 0
+     */
+    public double getSupport() {
+      return mySupport;
+    }
+
+    abstract double weight(double x);
+
+    private static double sinc(double x) {
+      if (x == 0) {
+        return 1;
+      }
+
+      x *= Math.PI;
+      return Math.sin(x) / x;
+    }
+  }
+
+  private Resampler() {}
+
+  /**
+   * Scales the image to the given size.
+   *
+   * @return a {@link BufferedImage#TYPE_INT_RGB} image if <code>src</code> is
+   * opaque, a {@link BufferedImage#TYPE_INT_ARGB} image otherwise
+   */
+  @NotNull
+  public static BufferedImage resample(
+    @NotNull BufferedImage src,
+    int width,
+    int height,
+    @NotNull Filter filter
+  ) {
+    return resample(src, width, height, filter, new Workspace());
+  }
+
+  /**
+   * Same as {@link #resample(BufferedImage, int, int, Filter)}, reusing the
+   * buffers of the workspace.
+   */
+  @NotNull
+  static BufferedImage resample(
+    @NotNull BufferedImage src,
+    int width,
+    int height,
+    @NotNull Filter filter,
+    @NotNull Workspace workspace
+  ) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException(
+        "width [" + width + "] and height [" + height + "] must be > 0"
+      );
+    }
+
+    var result = workspace.getResult(width * height);
+    resample(src, width, height, filter, workspace, result);
+
+    var opaque = src.getTransparency() == Transparency.OPAQUE;
+
+    @SuppressWarnings("UndesirableClassUsage")
+    var image = new BufferedImage(
+      width,
+      height,
+      opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB
+    );
+    image.getRaster().setDataElements(0, 0, width, height, result);
+    return image;
+  }
+
+  /**
+   * Scales the image to the size of <code>dst</code>, writing the pixels
+   * straight into its raster rather than into a new image.
+   *
+   * @return false if the pixels can't be written directly, in which case
+   * <code>dst</code> is left untouched: it isn't a
+   * {@link BufferedImage#TYPE_INT_ARGB} image, nor a
+   * {@link BufferedImage#TYPE_INT_RGB} one with an opaque <code>src</code>,
+   * or it shares its raster with another image, e.g. a sub-image
+   */
+  static boolean resampleInto(
+    @NotNull BufferedImage src,
+    @NotNull BufferedImage dst,
+    @NotNull Filter filter,
+    @NotNull Workspace workspace
+  ) {
+    var type = dst.getType();
+
+    if (
+      type != BufferedImage.TYPE_INT_ARGB &&
+      (type != BufferedImage.TYPE_INT_RGB ||
+        src.getTransparency() != Transparency.OPAQUE)
+    ) {
+      return false;
+    }
+
+    var width = dst.getWidth();
+    var height = dst.getHeight();
+    var raster = dst.getRaster();
+
+    if (
+      !(raster.getDataBuffer() instanceof DataBufferInt buffer) ||
+      !(raster.getSampleModel() instanceof
+        SinglePixelPackedSampleModel model) ||
+      model.getScanlineStride() != width ||
+      buffer.getOffset() != 0 ||
+      buffer.getSize() != width * height ||
+      raster.getSampleModelTranslateX() != 0 ||
+      raster.getSampleModelTranslateY() != 0
+    ) {
+      return false;
+    }
+
+    resample(src, width, height, filter, workspace, buffer.getData());
+    return true;
+  }
+
+  /**
+   * Scales the image into <code>result</code>, row by row, in the layout of
+   * {@link BufferedImage#TYPE_INT_ARGB}.
+   */
+  private static void resample(
+    @NotNull BufferedImage src,
+    int width,
+    int height,
+    @NotNull Filter filter,
+    @NotNull Workspace workspace,
+    @NotNull int[] result
+  ) {
+    var srcWidth = src.getWidth();
+    var srcHeight = src.getHeight();
+    var pixels = workspace.getPixels(src);
+    var rows = workspace.getRows(width * srcHeight);
+
+    resampleRows(
+      pixels,
+      srcWidth,
+      srcHeight,
+      rows,
+      width,
+      getKernel(srcWidth, width, filter)
+    );
+    resampleColumns(
+      rows,
+      width,
+      result,
+      height,
+      getKernel(srcHeight, height, filter),
+      workspace
+    );
+  }
+
+  /**
+   * @return the cached kernel for the sizes and the filter, computing it if
+   * it isn't cached
+   */
+  @NotNull
+  static Kernel getKernel(int srcSize, int dstSize, @NotNull Filter filter) {
+    var key = new KernelKey(srcSize, dstSize, filter);
+    var kernel = ourKernels.get(key);
+    IconStatistics.RESAMPLING_KERNELS.lookup();
+
+    if (kernel == null) {
+      // concurrent misses may compute the same kernel, which is harmless
+      IconStatistics.RESAMPLING_KERNELS.miss();
+      kernel = createKernel(srcSize, dstSize, filter);
+
+      if (kernel.myWeights.length <= MAX_CACHED_WEIGHTS) {
+        ourKernels.put(key, kernel);
+      }
+    }
+
+    return kernel;
+  }
+
+  /**
+   * @return the number of cached kernels
+   */
+  public static int getCachedKernelCount() {
+    return ourKernels.size();
+  }
+
+  public static void clearKernelCache() {
+    ourKernels.clear();
+  }
+
+  @NotNull
+  private static Map<KernelKey, Kernel> createKernelCache(int size) {
+    return Collections.synchronizedMap(
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<KernelKey, Kernel> e) {
+          return size() > size;
+        }
+      }
+    );
+  }
+
+  /**
+   * Computes the weights of the source pixels for every destination pixel
+   * along one axis. Pixel centers are aligned, e.g. scaling 2 pixels to 1
+   * centers the filter between the two. Weights of pixels past the edges are
+   * dropped and the rest are normalized.
+   */
+  @NotNull
+  static Kernel createKernel(int srcSize, int dstSize, @NotNull Filter filter) {
+    var scale = (double) srcSize / dstSize;
+    var stretch = Math.max(1, scale);
+    var support = filter.getSupport() * stretch;
+    var window = Math.min(srcSize, (int) Math.ceil(support) * 2 + 1);
+    var starts = new int[dstSize];
+    var counts = new int[dstSize];
+    var weights = new int[dstSize * window];
+    var values = new double[window];
+
+    for (var i = 0; i < dstSize; i++) {
+      var center = (i + 0.5) * scale;
+      var start = Math.max(0, (int) Math.floor(center - support + 0.5));
+      var end = Math.min(srcSize, (int) Math.floor(center + support + 0.5));
+      var count = Math.min(window, end - start);
+      var sum = 0.0;
+
+      for (var k = 0; k < count; k++) {
+        values[k] = filter.weight((start + k + 0.5 - center) / stretch);
+        sum += values[k];
+      }
+
+      if (sum == 0) { // a box narrower than a pixel missed every center
+        start = Math.min(srcSize - 1, (int) center);
+        count = 1;
+        values[0] = sum = 1;
+      }
+
+      // rounding errors go to the largest weight, so that weights add up
+      // exactly to ONE and flat areas stay flat
+      var total = 0;
+      var largest = 0;
+
+      for (var k = 0; k < count; k++) {
+        var weight = (int) Math.round(values[k] / sum * ONE);
+        weights[i * window + k] = weight;
+        total += weight;
+
+        if (weight > weights[i * window + largest]) {
+          largest = k;
+        }
+      }
+
+      weights[i * window + largest] += ONE - total;
+      starts[i] = start;
+      counts[i] = count;
+    }
+
+    return new Kernel(window, starts, counts, weights);
+  }
+
+  private static void resampleRows(
+    @NotNull int[] src,
+    int srcWidth,
+    int srcHeight,
+    @NotNull int[] dst,
+    int dstWidth,
+    @NotNull Kernel kernel
+  ) {
+    var weights = kernel.myWeights;
+    var window = kernel.myWindow;
+
+    for (var y = 0; y < srcHeight; y++) {
+      var row = y * srcWidth;
+
+      for (var x = 0; x < dstWidth; x++) {
+        var offset = row + kernel.myStarts[x];
+        var w = x * window;
+        long a = 0, r = 0, g = 0, b = 0;
+
+        for (int k = 0, count = kernel.myCounts[x]; k < count; k++) {
+          var pixel = src[offset + k];
+          long weight = (pixel >>> 24) * weights[w + k];
+          a += weight;
+          r += ((pixel >> 16) & 0xff) * weight;
+          g += ((pixel >> 8) & 0xff) * weight;
+          b += (pixel & 0xff) * weight;
+        }
+
+        dst[y * dstWidth + x] = pack(a, r, g, b);
+      }
+    }
+  }
+
+  private static void resampleColumns(
+    @NotNull int[] src,
+    int width,
+    @NotNull int[] dst,
+    int dstHeight,
+    @NotNull Kernel kernel,
+    @NotNull Workspace workspace
+  ) {
+    if (workspace.myAlpha == null || workspace.myAlpha.length < width) {
+      workspace.myAlpha = new long[width];
+      workspace.myRed = new long[width];
+      workspace.myGreen = new long[width];
+      workspace.myBlue = new long[width];
+    }
+
+    var a = workspace.myAlpha;
+    var r = workspace.myRed;
+    var g = workspace.myGreen;
+    var b = workspace.myBlue;
+    var weights = kernel.myWeights;
+
+    for (var y = 0; y < dstHeight; y++) {
+      var start = kernel.myStarts[y];
+      var w = y * kernel.myWindow;
+
+      Arrays.fill(a, 0, width, 0);
+      Arrays.fill(r, 0, width, 0);
+      Arrays.fill(g, 0, width, 0);
+      Arrays.fill(b, 0, width, 0);
+
+      for (int k = 0, count = kernel.myCounts[y]; k < count; k++) {
+        var row = (start + k) * width;
+        var kernelWeight = weights[w + k];
+
+        for (var x = 0; x < width; x++) {
+          var pixel = src[row + x];
+          long weight = (pixel >>> 24) * kernelWeight;
+          a[x] += weight;
+          r[x] += ((pixel >> 16) & 0xff) * weight;
+          g[x] += ((pixel >> 8) & 0xff) * weight;
+          b[x] += (pixel & 0xff) * weight;
+        }
+      }
+
+      var row = y * width;
+
+      for (var x = 0; x < width; x++) {
+        dst[row + x] = pack(a[x], r[x], g[x], b[x]);
+      }
+    }
+  }
+
+  /**
+   * Packs the sums of alpha and of alpha weighted colors, clamping the
+   * overshoot of the negative filter lobes.
+   */
+  private static int pack(long a, long r, long g, long b) {
+    var alpha = (int) clamp((a + HALF) >> FRACTION_BITS, 255);
+
+    if (alpha == 0) {
+      return 0;
+    }
+
+    var half = a >> 1;
+    var red = clamp((r + half) / a, 255);
+    var green = clamp((g + half) / a, 255);
+    var blue = clamp((b + half) / a, 255);
+    return (alpha << 24) | (int) ((red << 16) | (green << 8) | blue);
+  }
+
+  private static long clamp(long value, long max) {
+    return value < 0 ? 0 : Math.min(value, max);
+  }
+
+  @NotNull
+  private static int[] ensureSize(@Nullable int[] buffer, int size) {
+    return buffer != null && buffer.length >= size ? buffer : new int[size];
+  }
+
+  /**
+   * Weights of the source pixels along one axis: destination pixel
+   * <code>i</code> is the sum of the <code>myCounts[i]</code> source pixels
+   * from <code>myStarts[i]</code> on, multiplied by the weights from
+   * <code>i * myWindow</code> on, in units of 1/{@link #ONE}.
+   */
+  static final class Kernel {
+
+    final int myWindow;
+    final int[] myStarts;
+    final int[] myCounts;
+    final int[] myWeights;
+
+    Kernel(int window, int[] starts, int[] counts, int[] weights) {
+      myWindow = window;
+      myStarts = starts;
+      myCounts = counts;
+      myWeights = weights;
+    }
+  }
+
+  private record KernelKey(
+    int srcSize,
+    int dstSize,
+    @NotNull Filter filter
+  ) {}
+
+  /**
+   * Buffers reused by consecutive resamplings on one thread, e.g. of the
+   * images of a batch.
+   */
+  static final class Workspace {
+
+    private int[] myPixels;
+    private int[] myRows;
+    private int[] myResult;
+    private long[] myAlpha;
+    private long[] myRed;
+    private long[] myGreen;
+    private long[] myBlue;
+
+    @NotNull
+    private int[] getRows(int size) {
+      return myRows = ensureSize(myRows, size);
+    }
+
+    @NotNull
+    private int[] getResult(int size) {
+      return myResult = ensureSize(myResult, size);
+    }
+
+    /**
+     * @return the non-premultiplied ARGB pixels of the image, row by row
+     */
+    @NotNull
+    private int[] getPixels(@NotNull BufferedImage src) {
+      var width = src.getWidth();
+      var height = src.getHeight();
+      var type = src.getType();
+
+      if (
+        (type == BufferedImage.TYPE_INT_ARGB ||
+          type == BufferedImage.TYPE_INT_RGB) &&
+        src.getRaster().getDataBuffer() instanceof DataBufferInt
+      ) {
+        var pixels = myPixels = ensureSize(myPixels, width * height);
+        src.getRaster().getDataElements(0, 0, width, height, pixels);
+
+        if (type == BufferedImage.TYPE_INT_RGB) {
+          for (int i = 0, size = width * height; i < size; i++) {
+            pixels[i] |= 0xff000000;
+          }
+        }
+
+        return pixels;
+      }
+
+      @SuppressWarnings("UndesirableClassUsage")
+      var copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      var g = copy.createGraphics();
+      g.setComposite(AlphaComposite.Src);
+      g.drawImage(src, 0, 0, null);
+      g.dispose();
+
+      return ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+    }
+  }
+}
@@ -16,7 +16,9 @@
 
 package com.bulenkov.iconloader.util;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.RenderingHints;
@@ -35,6 +37,16 @@ import java.awt.image.IndexColorModel;
 import java.awt.image.Kernel;
 import java.awt.image.RasterFormatException;
 import java.awt.image.RescaleOp;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import javax.imageio.ImageIO;
 
 /**
@@ -422,6 +434,31 @@ public class Scalr {
      * {@link Method#QUALITY}).
      */
     ULTRA_QUALITY,
+    /**
+     * Used to indicate that the image should be resampled in a single pass
+     * by {@link Resampler}, averaging the source pixels each result pixel
+     * covers. Never picked by {@link Method#AUTOMATIC}, the same applies to
+     * the other resampling methods below.
+     */
+    BOX,
+    /**
+     * Used to indicate that the image should be resampled in a single pass
+     * by {@link Resampler} with a triangle filter.
+     */
+    BILINEAR,
+    /**
+     * Used to indicate that the image should be resampled in a single pass
+     * by {@link Resampler} with a cubic filter; comparable to
+     * {@link Method#ULTRA_QUALITY} when scaling down, without the repeated
+     * intermediate images.
+     */
+    BICUBIC,
+    /**
+     * Used to indicate that the image should be resampled in a single pass
+     * by {@link Resampler} with a Lanczos filter of 3 lobes, giving the
+     * sharpest result.
+     */
+    LANCZOS3,
   }
 
   /**
@@ -558,6 +595,29 @@ public class Scalr {
    */
   public static final int THRESHOLD_QUALITY_BALANCED = 800;
 
+  /**
+   * Size (in pixels of the resulting image) from which point every scaling
+   * pass is split into horizontal strips which are rendered in parallel on
+   * the {@link ForkJoinPool#commonPool()}. This includes every pass of the
+   * incremental scaling used by {@link Method#QUALITY} and
+   * {@link Method#ULTRA_QUALITY}.
+   * <p/>
+   * Every strip is rendered with the same transform into the same result
+   * image, clipped to its own rows, so the result is identical to the one of
+   * a single pass. Set the <code>imgscalr.parallelThreshold</code> property
+   * to <code>0</code> to always scale on the calling thread.
+   */
+  public static final int THRESHOLD_PARALLEL = Registry.getInt(
+    "imgscalr.parallelThreshold",
+    1024 * 1024
+  );
+
+  /**
+   * Number of result pixels a parallel scaling task renders on its own
+   * rather than splitting its strip further.
+   */
+  private static final int PARALLEL_STRIP_SIZE = 64 * 1024;
+
   /**
    * Used to apply, in the order given, 1 or more {@link BufferedImageOp}s to
    * a given {@link BufferedImage} and return the result.
@@ -1724,8 +1784,36 @@ public class Scalr {
     int targetWidth,
     int targetHeight,
     BufferedImageOp... ops
+  ) throws IllegalArgumentException, ImagingOpException {
+    return resize(
+      src,
+      scalingMethod,
+      resizeMode,
+      targetWidth,
+      targetHeight,
+      null,
+      ops
+    );
+  }
+
+  /**
+   * Same as
+   * {@link #resize(BufferedImage, Method, Mode, int, int, BufferedImageOp...)},
+   * reusing the scratch images and resampling buffers of
+   * <code>scratch</code> if it's given.
+   */
+  private static BufferedImage resize(
+    BufferedImage src,
+    Method scalingMethod,
+    Mode resizeMode,
+    int targetWidth,
+    int targetHeight,
+    Scratch scratch,
+    BufferedImageOp... ops
   ) throws IllegalArgumentException, ImagingOpException {
     var t = System.currentTimeMillis();
+    var event = new IconEvents.ScaleEvent();
+    event.begin();
 
     if (src == null) {
       throw new IllegalArgumentException("src cannot be null");
@@ -1929,15 +2017,36 @@ public class Scalr {
          * scale of their original image. Instead, BICUBIC was chosen to
          * honor the contract of a QUALITY scale of the original image.
          */
+        var images = scratch == null ? new BufferedImage[2] : scratch.myImages;
         result =
           scaleImageIncrementally(
             src,
             targetWidth,
             targetHeight,
             scalingMethod,
-            RenderingHints.VALUE_INTERPOLATION_BICUBIC
+            RenderingHints.VALUE_INTERPOLATION_BICUBIC,
+            null,
+            images
           );
+
+        // Batches flush their scratch images once they're done.
+        if (scratch == null) {
+          flush(images);
+        }
       }
+    } else {
+      if (DEBUG) {
+        log(1, "Resampling in a single pass...");
+      }
+
+      result =
+        Resampler.resample(
+          src,
+          targetWidth,
+          targetHeight,
+          getResamplerFilter(scalingMethod),
+          scratch == null ? new Resampler.Workspace() : scratch.myWorkspace
+        );
     }
 
     if (DEBUG) {
@@ -1949,9 +2058,306 @@ public class Scalr {
       result = apply(result, ops);
     }
 
+    if (event.shouldCommit()) {
+      event.method = scalingMethod.name();
+      event.sourceWidth = currentWidth;
+      event.sourceHeight = currentHeight;
+      event.width = targetWidth;
+      event.height = targetHeight;
+      event.commit();
+    }
+
     return result;
   }
 
+  /**
+   * Resize a given image to exactly the size of <code>destination</code>,
+   * rendering the result into <code>destination</code> instead of creating a
+   * new image, e.g. to reuse the same image for every frame of a zoom
+   * animation. Like {@link Mode#FIT_EXACT}, the proportions of
+   * <code>src</code> are not maintained if they differ from the ones of
+   * <code>destination</code>.
+   * <p/>
+   * The result is the same as the result of
+   * {@link #resize(BufferedImage, Method, Mode, int, int, BufferedImageOp...)}
+   * with {@link Mode#FIT_EXACT} if <code>destination</code> is of the type
+   * that method would create, {@link BufferedImage#TYPE_INT_RGB} for opaque
+   * images and {@link BufferedImage#TYPE_INT_ARGB} otherwise. The resampling
+   * methods, like {@link Method#BICUBIC}, write straight into the pixels of
+   * such a destination, without an intermediate image. A destination of any
+   * other type, or a sub-image, is accepted too: the scaled pixels are drawn
+   * into it, converted to its color model, e.g. dropping the alpha of a
+   * translucent <code>src</code> in an opaque destination.
+   * <p/>
+   * The previous contents of <code>destination</code> are discarded.
+   *
+   * @param src
+   *            The image that will be scaled.
+   * @param scalingMethod
+   *            The method used for scaling the image; preferring speed to
+   *            quality or a balance of both.
+   * @param destination
+   *            The image the scaled image is rendered into, whose size is
+   *            the target size. Must not be <code>src</code>.
+   *
+   * @return <code>destination</code>, not a new image.
+   *
+   * @throws IllegalArgumentException
+   *             if <code>src</code> or <code>destination</code> is
+   *             <code>null</code> or if they are the same image.
+   * @throws IllegalArgumentException
+   *             if <code>scalingMethod</code> is <code>null</code>.
+   */
+  public static BufferedImage resize(
+    BufferedImage src,
+    Method scalingMethod,
+    BufferedImage destination
+  ) throws IllegalArgumentException {
+    if (src == null || destination == null) {
+      throw new IllegalArgumentException("src and destination cannot be null");
+    }
+
+    if (src == destination) {
+      throw new IllegalArgumentException("src cannot be the destination");
+    }
+
+    if (scalingMethod == null) {
+      throw new IllegalArgumentException(
+        "scalingMethod cannot be null. A good default value is Method.AUTOMATIC."
+      );
+    }
+
+    var event = new IconEvents.ScaleEvent();
+    event.begin();
+
+    var targetWidth = destination.getWidth();
+    var targetHeight = destination.getHeight();
+
+    if (scalingMethod == Method.AUTOMATIC) {
+      scalingMethod =
+        determineScalingMethod(
+          targetWidth,
+          targetHeight,
+          (float) src.getHeight() / src.getWidth()
+        );
+    }
+
+    if (
+      scalingMethod == Method.QUALITY || scalingMethod == Method.ULTRA_QUALITY
+    ) {
+      if (targetWidth > src.getWidth() || targetHeight > src.getHeight()) {
+        clear(destination);
+        scaleImage(
+          src,
+          destination,
+          RenderingHints.VALUE_INTERPOLATION_BICUBIC,
+          isParallel(targetWidth, targetHeight)
+        );
+      } else {
+        scaleImageIncrementally(
+          src,
+          targetWidth,
+          targetHeight,
+          scalingMethod,
+          RenderingHints.VALUE_INTERPOLATION_BICUBIC,
+          destination
+        );
+      }
+    } else if (
+      scalingMethod == Method.SPEED || scalingMethod == Method.BALANCED
+    ) {
+      clear(destination);
+      scaleImage(
+        src,
+        destination,
+        scalingMethod == Method.SPEED
+          ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+          : RenderingHints.VALUE_INTERPOLATION_BILINEAR,
+        isParallel(targetWidth, targetHeight)
+      );
+    } else {
+      var filter = getResamplerFilter(scalingMethod);
+      var workspace = new Resampler.Workspace();
+
+      if (!Resampler.resampleInto(src, destination, filter, workspace)) {
+        var result = Resampler.resample(
+          src,
+          targetWidth,
+          targetHeight,
+          filter,
+          workspace
+        );
+        var graphics = destination.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.drawImage(result, 0, 0, null);
+        graphics.dispose();
+      }
+    }
+
+    if (event.shouldCommit()) {
+      event.method = scalingMethod.name();
+      event.sourceWidth = src.getWidth();
+      event.sourceHeight = src.getHeight();
+      event.width = targetWidth;
+      event.height = targetHeight;
+      event.commit();
+    }
+
+    return destination;
+  }
+
+  /**
+   * Resize all the given images to the same target size, in parallel on
+   * <code>executor</code>. Every image is resized the same way as by
+   * {@link #resize(BufferedImage, Method, int, int, BufferedImageOp...)},
+   * which is honoring its proportions.
+   * <p/>
+   * See {@link #resizeAll(List, Method, List, Executor)} for what is shared
+   * between the images.
+   *
+   * @return the resized images, in the order of <code>srcs</code>.
+   *
+   * @throws IllegalArgumentException
+   *             if <code>srcs</code> or any of the images is
+   *             <code>null</code>, if <code>scalingMethod</code> is
+   *             <code>null</code> or if <code>targetWidth</code> is &lt; 0
+   *             or <code>targetHeight</code> is &lt; 0.
+   */
+  public static List<BufferedImage> resizeAll(
+    List<BufferedImage> srcs,
+    Method scalingMethod,
+    int targetWidth,
+    int targetHeight,
+    Executor executor
+  ) throws IllegalArgumentException {
+    if (srcs == null) {
+      throw new IllegalArgumentException("srcs cannot be null");
+    }
+
+    var targetSize = new Dimension(targetWidth, targetHeight);
+    return resizeAll(
+      srcs,
+      scalingMethod,
+      Collections.nCopies(srcs.size(), targetSize),
+      executor
+    );
+  }
+
+  /**
+   * Resize every given image to its own target size, in parallel on
+   * <code>executor</code>. Every image is resized the same way as by
+   * {@link #resize(BufferedImage, Method, int, int, BufferedImageOp...)},
+   * which is honoring its proportions.
+   * <p/>
+   * Unlike separate {@link #resize} calls, the resizes of a batch share their
+   * setup: the intermediate images of the incremental {@link Method#QUALITY}
+   * and {@link Method#ULTRA_QUALITY} scaling and the buffers of the
+   * resampling methods are kept per thread and reused by the next image the
+   * thread resizes. The resampling weights are cached for all resizes, see
+   * {@link Resampler}.
+   *
+   * @param targetSizes
+   *            The target size of every image of <code>srcs</code>, in the
+   *            same order.
+   * @param executor
+   *            The executor to resize the images on, an image per task.
+   *
+   * @return the resized images, in the order of <code>srcs</code>.
+   *
+   * @throws IllegalArgumentException
+   *             if <code>srcs</code>, <code>targetSizes</code> or any of the
+   *             images is <code>null</code>, if the lists have different
+   *             sizes, if <code>scalingMethod</code> is <code>null</code> or
+   *             if a target size is negative.
+   * @throws ImagingOpException
+   *             if resizing an image fails.
+   */
+  public static List<BufferedImage> resizeAll(
+    List<BufferedImage> srcs,
+    Method scalingMethod,
+    List<Dimension> targetSizes,
+    Executor executor
+  ) throws IllegalArgumentException, ImagingOpException {
+    if (srcs == null || targetSizes == null || executor == null) {
+      throw new IllegalArgumentException(
+        "srcs, targetSizes and executor cannot be null"
+      );
+    }
+
+    if (srcs.size() != targetSizes.size()) {
+      throw new IllegalArgumentException(
+        "srcs [" +
+        srcs.size() +
+        "] and targetSizes [" +
+        targetSizes.size() +
+        "] must have the same size"
+      );
+    }
+
+    if (DEBUG) {
+      log(0, "Resizing %d images...", srcs.size());
+    }
+
+    var scratches = new ConcurrentLinkedQueue<Scratch>();
+    var futures = new ArrayList<CompletableFuture<BufferedImage>>();
+
+    for (var i = 0; i < srcs.size(); i++) {
+      var src = srcs.get(i);
+      var size = targetSizes.get(i);
+
+      futures.add(
+        CompletableFuture.supplyAsync(
+          () -> {
+            var scratch = scratches.poll();
+
+            if (scratch == null) {
+              scratch = new Scratch();
+            }
+
+            try {
+              return resize(
+                src,
+                scalingMethod,
+                Mode.AUTOMATIC,
+                size.width,
+                size.height,
+                scratch
+              );
+            } finally {
+              scratches.add(scratch);
+            }
+          },
+          executor
+        )
+      );
+    }
+
+    try {
+      // completes when all the resizes do, even if some of them fail
+      CompletableFuture
+        .allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+
+      throw e;
+    } finally {
+      for (var scratch : scratches) {
+        flush(scratch.myImages);
+      }
+    }
+
+    var results = new ArrayList<BufferedImage>(futures.size());
+
+    for (var future : futures) {
+      results.add(future.join());
+    }
+
+    return results;
+  }
+
   /**
    * Used to apply a {@link Rotation} and then <code>0</code> or more
    * {@link BufferedImageOp}s to a given image and return the result.
@@ -2357,6 +2763,26 @@ public class Scalr {
     return result;
   }
 
+  /**
+   * Used to map the resampling {@link Method}s to the {@link Resampler}
+   * filters.
+   *
+   * @throws IllegalArgumentException
+   *             if <code>scalingMethod</code> isn't a resampling method.
+   */
+  protected static Resampler.Filter getResamplerFilter(Method scalingMethod)
+    throws IllegalArgumentException {
+    return switch (scalingMethod) {
+      case BOX -> Resampler.Filter.BOX;
+      case BILINEAR -> Resampler.Filter.BILINEAR;
+      case BICUBIC -> Resampler.Filter.BICUBIC;
+      case LANCZOS3 -> Resampler.Filter.LANCZOS3;
+      default -> throw new IllegalArgumentException(
+        "Not a resampling method: " + scalingMethod
+      );
+    };
+  }
+
   /**
    * Used to implement a straight-forward image-scaling operation using Java
    * 2D.
@@ -2384,9 +2810,86 @@ public class Scalr {
     int targetWidth,
     int targetHeight,
     Object interpolationHintValue
+  ) {
+    return scaleImage(
+      src,
+      targetWidth,
+      targetHeight,
+      interpolationHintValue,
+      isParallel(targetWidth, targetHeight)
+    );
+  }
+
+  /**
+   * Used to decide if a scaling pass to the given size is rendered in
+   * parallel, see {@link #THRESHOLD_PARALLEL}.
+   */
+  protected static boolean isParallel(int targetWidth, int targetHeight) {
+    return (
+      THRESHOLD_PARALLEL > 0 &&
+      (long) targetWidth * targetHeight >= THRESHOLD_PARALLEL &&
+      ForkJoinPool.getCommonPoolParallelism() > 1
+    );
+  }
+
+  /**
+   * Same as {@link #scaleImage(BufferedImage, int, int, Object)}, with the
+   * choice between rendering the result at once on the calling thread and
+   * rendering it in strips on the {@link ForkJoinPool#commonPool()} (see
+   * {@link #THRESHOLD_PARALLEL}) made by the caller.
+   */
+  protected static BufferedImage scaleImage(
+    BufferedImage src,
+    int targetWidth,
+    int targetHeight,
+    Object interpolationHintValue,
+    boolean parallel
   ) {
     // Setup the rendering resources to match the source image's
     var result = createOptimalImage(src, targetWidth, targetHeight);
+    scaleImage(src, result, interpolationHintValue, parallel);
+
+    // Return the scaled image to the caller.
+    return result;
+  }
+
+  /**
+   * Used to render <code>src</code> scaled to the size of <code>result</code>
+   * into <code>result</code>, which is expected to be fully transparent (see
+   * {@link #clear(BufferedImage)}), e.g. newly created.
+   *
+   * @param src
+   *            The image that will be scaled.
+   * @param result
+   *            The image, possibly a subimage of a bigger one, to render the
+   *            scaled image into.
+   * @param interpolationHintValue
+   *            The {@link RenderingHints} interpolation value used to
+   *            indicate the method that {@link Graphics2D} should use when
+   *            scaling the image.
+   * @param parallel
+   *            Whether to render <code>result</code> in strips on the
+   *            {@link ForkJoinPool#commonPool()}.
+   */
+  protected static void scaleImage(
+    BufferedImage src,
+    BufferedImage result,
+    Object interpolationHintValue,
+    boolean parallel
+  ) {
+    var targetWidth = result.getWidth();
+    var targetHeight = result.getHeight();
+
+    if (parallel) {
+      ForkJoinPool
+        .commonPool()
+        .invoke(
+          new ScaleTask(src, result, interpolationHintValue, 0, targetHeight)
+        );
+
+      return;
+    }
+
     var resultGraphics = result.createGraphics();
 
     // Scale the image to the new buffer using the specified rendering hint.
@@ -2398,9 +2901,17 @@ public class Scalr {
 
     // Just to be clean, explicitly dispose our temporary graphics object
     resultGraphics.dispose();
+  }
 
-    // Return the scaled image to the caller.
-    return result;
+  /**
+   * Used to make every pixel of a reused image fully transparent, so that
+   * rendering into it gives the same result as rendering into a new image.
+   */
+  protected static void clear(BufferedImage image) {
+    var graphics = image.createGraphics();
+    graphics.setComposite(AlphaComposite.Clear);
+    graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+    graphics.dispose();
   }
 
   /**
@@ -2439,7 +2950,77 @@ public class Scalr {
     Method scalingMethod,
     Object interpolationHintValue
   ) {
-    var hasReassignedSrc = false;
+    return scaleImageIncrementally(
+      src,
+      targetWidth,
+      targetHeight,
+      scalingMethod,
+      interpolationHintValue,
+      null
+    );
+  }
+
+  /**
+   * Same as
+   * {@link #scaleImageIncrementally(BufferedImage, int, int, Method, Object)},
+   * rendering the last step into <code>destination</code> if it's given.
+   * <p/>
+   * The intermediate steps only ever shrink the image, so instead of
+   * creating an image for every step they alternate between two scratch
+   * images created for the first two steps, each step rendering into the
+   * top left corner of one of them and reading from the other.
+   *
+   * @param destination
+   *            The image of <code>targetWidth</code> x
+   *            <code>targetHeight</code> pixels to render the result into,
+   *            or <code>null</code> to create a new one. Its previous
+   *            contents are discarded.
+   *
+   * @return an image scaled to the given dimensions using the given rendering
+   *         hint, <code>destination</code> if it's given.
+   */
+  protected static BufferedImage scaleImageIncrementally(
+    BufferedImage src,
+    int targetWidth,
+    int targetHeight,
+    Method scalingMethod,
+    Object interpolationHintValue,
+    BufferedImage destination
+  ) {
+    var scratch = new BufferedImage[2];
+    var result = scaleImageIncrementally(
+      src,
+      targetWidth,
+      targetHeight,
+      scalingMethod,
+      interpolationHintValue,
+      destination,
+      scratch
+    );
+
+    /*
+     * Explicitly flush the scratch images to free up native resources, the
+     * result is never one of them.
+     */
+    flush(scratch);
+    return result;
+  }
+
+  /**
+   * Same as
+   * {@link #scaleImageIncrementally(BufferedImage, int, int, Method, Object, BufferedImage)},
+   * taking the scratch images from <code>scratch</code>, which may be kept
+   * from previous calls, and storing the ones it creates there.
+   */
+  private static BufferedImage scaleImageIncrementally(
+    BufferedImage src,
+    int targetWidth,
+    int targetHeight,
+    Method scalingMethod,
+    Object interpolationHintValue,
+    BufferedImage destination,
+    BufferedImage[] scratch
+  ) {
     var incrementCount = 0;
     var currentWidth = src.getWidth();
     var currentHeight = src.getHeight();
@@ -2529,6 +3110,13 @@ public class Scalr {
       if (
         prevCurrentWidth == currentWidth && prevCurrentHeight == currentHeight
       ) {
+        if (destination != null) {
+          // Nothing to scale, the caller still expects the result in place.
+          clear(destination);
+          scaleImage(src, destination, interpolationHintValue, false);
+          src = destination;
+        }
+
         break;
       }
 
@@ -2543,28 +3131,53 @@ public class Scalr {
         );
       }
 
+      BufferedImage incrementalImage;
+
+      if (currentWidth == targetWidth && currentHeight == targetHeight) {
+        /*
+         * The last step renders into the image returned to the caller,
+         * which mustn't be a part of a bigger scratch image.
+         */
+        if (destination == null) {
+          incrementalImage = createOptimalImage(
+            src,
+            currentWidth,
+            currentHeight
+          );
+        } else {
+          incrementalImage = destination;
+          clear(destination);
+        }
+      } else {
+        /*
+         * Intermediate steps render into the scratch image which src
+         * isn't read from, which the first step using it makes big enough
+         * since the following steps are never bigger.
+         */
+        var index = incrementCount % 2;
+
+        if (!fits(scratch[index], src, currentWidth, currentHeight)) {
+          if (scratch[index] != null) {
+            scratch[index].flush();
+          }
+
+          scratch[index] = createOptimalImage(src, currentWidth, currentHeight);
+          incrementalImage = scratch[index];
+        } else {
+          incrementalImage =
+            scratch[index].getSubimage(0, 0, currentWidth, currentHeight);
+          clear(incrementalImage);
+        }
+      }
+
       // Render the incremental scaled image.
-      var incrementalImage = scaleImage(
+      scaleImage(
         src,
-        currentWidth,
-        currentHeight,
-        interpolationHintValue
+        incrementalImage,
+        interpolationHintValue,
+        isParallel(currentWidth, currentHeight)
       );
 
-      /*
-       * Before re-assigning our interim (partially scaled)
-       * incrementalImage to be the new src image before we iterate around
-       * again to process it down further, we want to flush() the previous
-       * src image IF (and only IF) it was one of our own temporary
-       * BufferedImages created during this incremental down-sampling
-       * cycle. If it wasn't one of ours, then it was the original
-       * caller-supplied BufferedImage in which case we don't want to
-       * flush() it and just leave it alone.
-       */
-      if (hasReassignedSrc) {
-        src.flush();
-      }
-
       /*
        * Now treat our incremental partially scaled image as the src image
        * and cycle through our loop again to do another incremental
@@ -2572,13 +3185,6 @@ public class Scalr {
        */
       src = incrementalImage;
 
-      /*
-       * Keep track of us re-assigning the original caller-supplied source
-       * image with one of our interim BufferedImages so we know when to
-       * explicitly flush the interim "src" on the next cycle through.
-       */
-      hasReassignedSrc = true;
-
       // Track how many times we go through this cycle to scale the image.
       incrementCount++;
     } while (currentWidth != targetWidth || currentHeight != targetHeight);
@@ -2593,4 +3199,161 @@ public class Scalr {
      */
     return src;
   }
+
+  /**
+   * Used to check if a scratch image can take a scaling step of
+   * <code>src</code> in its top left corner, i.e. if it's big enough and of
+   * the type {@link #createOptimalImage(BufferedImage, int, int)} would
+   * create.
+   */
+  private static boolean fits(
+    BufferedImage scratch,
+    BufferedImage src,
+    int width,
+    int height
+  ) {
+    return (
+      scratch != null &&
+      scratch.getWidth() >= width &&
+      scratch.getHeight() >= height &&
+      (scratch.getTransparency() == Transparency.OPAQUE) ==
+      (src.getTransparency() == Transparency.OPAQUE)
+    );
+  }
+
+  private static void flush(BufferedImage[] images) {
+    for (var image : images) {
+      if (image != null) {
+        image.flush();
+      }
+    }
+  }
+
+  /**
+   * The scratch images and resampling buffers a thread of
+   * {@link #resizeAll(List, Method, List, Executor)} reuses from one image to
+   * the next.
+   */
+  private static final class Scratch {
+
+    private final BufferedImage[] myImages = new BufferedImage[2];
+    private final Resampler.Workspace myWorkspace = new Resampler.Workspace();
+  }
+
+  /**
+   * Renders the rows <code>[y, y + height)</code> of a scaled image, splitting
+   * them in halves as long as they're bigger than
+   * {@link #PARALLEL_STRIP_SIZE}.
+   */
+  private static final class ScaleTask extends RecursiveAction {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    // tasks are never serialized, ForkJoinTask only happens to be
+    // Serializable
+    private final transient BufferedImage mySrc;
+    private final transient BufferedImage myResult;
+    private final transient Object myInterpolationHintValue;
+    private final int myY;
+    private final int myHeight;
+
+    private ScaleTask(
+      BufferedImage src,
+      BufferedImage result,
+      Object interpolationHintValue,
+      int y,
+      int height
+    ) {
+      mySrc = src;
+      myResult = result;
+      myInterpolationHintValue = interpolationHintValue;
+      myY = y;
+      myHeight = height;
+    }
+
+    @Override
+    protected void compute() {
+      var width = myResult.getWidth();
+
+      if (myHeight < 2 || (long) width * myHeight <= PARALLEL_STRIP_SIZE) {
+        render();
+        return;
+      }
+
+      var split = findSplit(myY + myHeight / 2);
+
+      if (split < 0) {
+        render();
+        return;
+      }
+
+      invokeAll(
+        new ScaleTask(
+          mySrc,
+          myResult,
+          myInterpolationHintValue,
+          myY,
+          split - myY
+        ),
+        new ScaleTask(
+          mySrc,
+          myResult,
+          myInterpolationHintValue,
+          split,
+          myY + myHeight - split
+        )
+      );
+    }
+
+    private void render() {
+      var graphics = myResult.createGraphics();
+      graphics.setRenderingHint(
+        RenderingHints.KEY_INTERPOLATION,
+        myInterpolationHintValue
+      );
+      graphics.clipRect(0, myY, myResult.getWidth(), myHeight);
+      graphics.drawImage(
+        mySrc,
+        0,
+        0,
+        myResult.getWidth(),
+        myResult.getHeight(),
+        null
+      );
+      graphics.dispose();
+    }
+
+    /**
+     * Java2D steps the source position from the first row it renders, so a
+     * strip may start at a row only if the source position of the row is
+     * far enough from the 1/256th of a pixel the interpolation weights
+     * are rounded to for the stepping error not to matter.
+     *
+     * @return the row closest to <code>y</code> inside this strip which
+     *         a new strip can start at, or -1 if there's none nearby
+     */
+    private int findSplit(int y) {
+      for (var offset = 0; offset < 16; offset++) {
+        for (var row : new int[] { y - offset, y + offset }) {
+          if (row > myY && row < myY + myHeight && isSplit(row)) {
+            return row;
+          }
+        }
+      }
+
+      return -1;
+    }
+
+    private boolean isSplit(int row) {
+      long height = myResult.getHeight();
+
+      // 256 * (source y of the row centre) = numerator / height
+      var numerator = ((2L * row + 1) * mySrc.getHeight() - height) * 128;
+      var remainder = Math.floorMod(numerator, height);
+      return (
+        Math.min(remainder, height - remainder) * (1L << 24) > height * height
+      );
+    }
+  }
 }
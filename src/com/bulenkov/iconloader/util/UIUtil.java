@@ -219,19 +219,36 @@ public class UIUtil {
     return new BufferedImage(width, height, type);
   }
 
+  private static final int DEFAULT_GRAY_PERCENT = 65;
+  private static final int DARCULA_GRAY_PERCENT = 30;
+
   private static final GrayFilter DEFAULT_GRAY_FILTER = new GrayFilter(
     true,
-    65
+    DEFAULT_GRAY_PERCENT
   );
   private static final GrayFilter DARCULA_GRAY_FILTER = new GrayFilter(
     true,
-    30
+    DARCULA_GRAY_PERCENT
   );
 
+  private static final GrayRasterFilter DEFAULT_GRAY_RASTER_FILTER =
+    new GrayRasterFilter(true, DEFAULT_GRAY_PERCENT);
+  private static final GrayRasterFilter DARCULA_GRAY_RASTER_FILTER =
+    new GrayRasterFilter(true, DARCULA_GRAY_PERCENT);
+
   public static GrayFilter getGrayFilter() {
     return isUnderDarcula() ? DARCULA_GRAY_FILTER : DEFAULT_GRAY_FILTER;
   }
 
+  /**
+   * @return the filter producing the same output as {@link #getGrayFilter()}
+   */
+  public static GrayRasterFilter getGrayRasterFilter() {
+    return isUnderDarcula()
+      ? DARCULA_GRAY_RASTER_FILTER
+      : DEFAULT_GRAY_RASTER_FILTER;
+  }
+
   public static Font getLabelFont() {
     return UIManager.getFont("Label.font");
   }
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.ZipFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of the <code>@2x</code> and <code>_dark</code> image variants that
+ * actually exist, so that {@link ImageLoader} doesn't have to probe for every
+ * variant of every icon. Most icons have neither, and each probe is a failed
+ * resource lookup.
+ * <p>
+ * A jar is indexed on first access by a single pass over its entries, a
+ * directory by listing it. An index is re-read when the modification stamp
+ * of its jar or directory changes, which is checked at most once a second,
+ * or after {@link #clear()}.
+ * <p>
+ * A resource loaded through a class may have variants in any root of the
+ * class path of its class loader, so all of them are consulted. Class
+ * loaders whose roots aren't known, and resources that are neither in a
+ * local jar nor in a local directory, aren't indexed, and all their variants
+ * are probed as before.
+ * <p>
+ * The index is enabled by default and can be turned off with
+ * <code>-Dicon.variant.index=false</code>.
+ */
+public final class VariantIndex {
+
+  private static final String[] MARKERS = { "@2x", "_dark" };
+
+  private static final Map<String, Listing<Map<String, Set<String>>>> ourJars =
+    new ConcurrentHashMap<>();
+
+  private static final Map<String, Listing<Set<String>>> ourDirectories =
+    new ConcurrentHashMap<>();
+
+  private static final WeakIdentityCache<
+    ClassLoader,
+    Optional<List<Root>>
+  > ourRoots = new WeakIdentityCache<>();
+
+  private static volatile long ourCheckInterval = TimeUnit.SECONDS.toNanos(1);
+
+  private VariantIndex() {}
+
+  public static boolean isEnabled() {
+    return Boolean.parseBoolean(Registry.get("icon.variant.index", "true"));
+  }
+
+  /**
+   * @return true if <code>name</code> looks like an image variant, i.e. is
+   * the kind of name the index keeps track of
+   */
+  public static boolean isVariant(@NotNull String name) {
+    for (var marker : MARKERS) {
+      if (name.contains(marker)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns the names of the variant files located next to the given
+   * resource, e.g. <code>{"add@2x.png", "add_dark.png"}</code> for
+   * <code>/icons/add.png</code>.
+   *
+   * @param path a URL if <code>cls</code> is null, a resource path otherwise
+   * @return the variant names or null if the location of the resource isn't
+   * indexed and every variant has to be probed
+   */
+  @Nullable
+  public static Set<String> getVariants(
+    @NotNull String path,
+    @Nullable Class<?> cls
+  ) {
+    if (!isEnabled()) {
+      return null;
+    }
+
+    if (cls != null) {
+      var loader = cls.getClassLoader();
+      return loader == null
+        ? null
+        : getClassPathVariants(getResourceName(path, cls), loader);
+    }
+
+    try {
+      return getVariants(new URI(path).toURL());
+    } catch (URISyntaxException | IOException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the names of the variant files of a resource found in any root
+   * of the class path of <code>loader</code>.
+   *
+   * @param name a resource name as {@link ClassLoader#getResource} takes it
+   * @return the variant names or null if the roots of the class loader
+   * aren't known
+   */
+  @Nullable
+  public static Set<String> getClassPathVariants(
+    @NotNull String name,
+    @NotNull ClassLoader loader
+  ) {
+    var roots = ourRoots.get(loader, VariantIndex::getRoots).orElse(null);
+
+    if (roots == null) {
+      return null;
+    }
+
+    var parent = getParent(name);
+    Set<String> result = Collections.emptySet();
+
+    for (var root : roots) {
+      var variants = root.jar()
+        ? getJarVariants(root.file(), parent)
+        : getDirectoryVariants(new File(root.file(), parent));
+
+      if (variants.isEmpty()) {
+        continue;
+      }
+
+      if (result.isEmpty()) {
+        result = variants;
+      } else {
+        result = new HashSet<>(result);
+        result.addAll(variants);
+      }
+    }
+
+    return result;
+  }
+
+  @Nullable
+  public static Set<String> getVariants(@NotNull URL url) {
+    var protocol = url.getProtocol();
+
+    if (URLUtil.JAR_PROTOCOL.equals(protocol)) {
+      var paths = URLUtil.splitJarUrl(url.getFile());
+
+      if (paths == null) {
+        return null;
+      }
+
+      // entry names always use '/', only the jar is a file system path
+      var jar = new File(URLUtil.unquote(paths.first));
+      var entry = URLUtil.unescapePercentSequences(paths.second);
+      return getJarVariants(jar, getParent(entry));
+    }
+
+    if (URLUtil.FILE_PROTOCOL.equals(protocol)) {
+      var dir = new File(URLUtil.unquote(url.getFile())).getParentFile();
+      return dir == null ? null : getDirectoryVariants(dir);
+    }
+
+    return null;
+  }
+
+  /**
+   * Drops all indexed jars and directories, and the known class path roots.
+   */
+  public static void clear() {
+    ourJars.clear();
+    ourDirectories.clear();
+    ourRoots.clear();
+  }
+
+  /**
+   * This method is for test purposes only
+   */
+  static void setCheckInterval(long nanos) {
+    ourCheckInterval = nanos;
+  }
+
+  @NotNull
+  private static Set<String> getJarVariants(
+    @NotNull File jar,
+    @NotNull String dir
+  ) {
+    var variants = getListing(ourJars, jar, VariantIndex::indexJar).get(dir);
+    return variants == null ? Collections.emptySet() : variants;
+  }
+
+  @NotNull
+  private static Set<String> getDirectoryVariants(@NotNull File dir) {
+    return getListing(ourDirectories, dir, VariantIndex::listDirectory);
+  }
+
+  /**
+   * @return the cached listing of <code>file</code>, re-read if the stamp of
+   * the file changed since it was last checked
+   */
+  @NotNull
+  private static <T> T getListing(
+    @NotNull Map<String, Listing<T>> listings,
+    @NotNull File file,
+    @NotNull Function<File, T> reader
+  ) {
+    var now = System.nanoTime();
+    var listing = listings.get(file.getPath());
+
+    if (listing != null && now - listing.myCheckedAt < ourCheckInterval) {
+      return listing.myValue;
+    }
+
+    var stamp = 31 * file.lastModified() + file.length();
+
+    if (listing == null || listing.myStamp != stamp) {
+      listing = new Listing<>(stamp, reader.apply(file));
+      listings.put(file.getPath(), listing);
+    }
+
+    listing.myCheckedAt = now;
+    return listing.myValue;
+  }
+
+  @NotNull
+  private static Map<String, Set<String>> indexJar(@NotNull File jar) {
+    var index = new HashMap<String, Set<String>>();
+
+    try (var zip = new ZipFile(jar)) {
+      var entries = zip.entries();
+
+      while (entries.hasMoreElements()) {
+        var name = entries.nextElement().getName();
+        var slash = name.lastIndexOf('/');
+        var fileName = name.substring(slash + 1);
+
+        if (isVariant(fileName)) {
+          index
+            .computeIfAbsent(getParent(name), k -> new HashSet<>())
+            .add(fileName);
+        }
+      }
+    } catch (IOException e) {
+      // an unreadable jar has no variants we could load
+      return Collections.emptyMap();
+    }
+
+    return index;
+  }
+
+  @NotNull
+  private static Set<String> listDirectory(@NotNull File dir) {
+    var names = dir.list((d, name) -> isVariant(name));
+
+    if (names == null || names.length == 0) {
+      return Collections.emptySet();
+    }
+
+    return Set.of(names);
+  }
+
+  /**
+   * Collects the class path roots of <code>loader</code> and its parents.
+   * The JDK's own loaders are skipped, they don't hold icons.
+   *
+   * @return the roots, or nothing if a class loader has roots that can't be
+   * indexed
+   */
+  @NotNull
+  private static Optional<List<Root>> getRoots(@NotNull ClassLoader loader) {
+    var roots = new ArrayList<Root>();
+    var platform = ClassLoader.getPlatformClassLoader();
+
+    for (
+      var cur = loader;
+      cur != null && cur != platform;
+      cur = cur.getParent()
+    ) {
+      if (cur instanceof URLClassLoader) {
+        for (var url : ((URLClassLoader) cur).getURLs()) {
+          if (!URLUtil.FILE_PROTOCOL.equals(url.getProtocol())) {
+            return Optional.empty();
+          }
+
+          try {
+            addRoot(roots, Path.of(url.toURI()).toFile());
+          } catch (URISyntaxException | IllegalArgumentException e) {
+            return Optional.empty();
+          }
+        }
+      } else if (
+        cur == ClassLoader.getSystemClassLoader() &&
+        System.getProperty("jdk.module.path") == null
+      ) {
+        var classPath = System.getProperty("java.class.path", "");
+
+        for (var entry : classPath.split(File.pathSeparator)) {
+          addRoot(roots, new File(entry.isEmpty() ? "." : entry));
+        }
+      } else {
+        return Optional.empty();
+      }
+    }
+
+    return Optional.of(roots);
+  }
+
+  private static void addRoot(@NotNull List<Root> roots, @NotNull File file) {
+    if (file.isDirectory()) {
+      roots.add(new Root(file, false));
+    } else if (file.isFile()) {
+      roots.add(new Root(file, true));
+    }
+  }
+
+  /**
+   * @return the name {@link Class#getResource(String)} looks up for
+   * <code>path</code>
+   */
+  @NotNull
+  private static String getResourceName(
+    @NotNull String path,
+    @NotNull Class<?> cls
+  ) {
+    if (path.startsWith("/")) {
+      return path.substring(1);
+    }
+
+    var packageName = cls.getPackageName();
+    return packageName.isEmpty()
+      ? path
+      : packageName.replace('.', '/') + "/" + path;
+  }
+
+  @NotNull
+  private static String getParent(@NotNull String entry) {
+    var slash = entry.lastIndexOf('/');
+    return slash < 0 ? "" : entry.substring(0, slash);
+  }
+
+  private record Root(@NotNull File file, boolean jar) {}
+
+  private static final class Listing<T> {
+
+    private final long myStamp;
+    private final T myValue;
+    private volatile long myCheckedAt;
+
+    private Listing(long stamp, @NotNull T value) {
+      myStamp = stamp;
+      myValue = value;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Thread-safe cache of values computed from weakly referenced keys, which are
+ * compared by identity. An entry is dropped once its key is collected, so a
+ * value must not reference its key.
+ * <p>
+ * Computation is single-flight: concurrent {@link #get} calls for the same
+ * key compute the value once, the other callers wait for it. A value that
+ * failed to compute isn't cached.
+ */
+public final class WeakIdentityCache<K, V> {
+
+  private final ConcurrentMap<Key<K>, CompletableFuture<V>> myMap =
+    new ConcurrentHashMap<>();
+  private final ReferenceQueue<K> myQueue = new ReferenceQueue<>();
+
+  @NotNull
+  public V get(
+    @NotNull K key,
+    @NotNull Function<? super K, ? extends V> computation
+  ) {
+    processQueue();
+    var future = myMap.get(new Key<>(key, null));
+
+    if (future == null) {
+      var computed = new CompletableFuture<V>();
+      future = myMap.putIfAbsent(new Key<>(key, myQueue), computed);
+
+      if (future == null) {
+        try {
+          V value = computation.apply(key);
+          computed.complete(value);
+          return value;
+        } catch (RuntimeException | Error e) {
+          myMap.remove(new Key<>(key, null), computed);
+          computed.completeExceptionally(e);
+          throw e;
+        }
+      }
+    }
+
+    return future.join();
+  }
+
+  public int size() {
+    processQueue();
+    return myMap.size();
+  }
+
+  public void clear() {
+    myMap.clear();
+  }
+
+  private void processQueue() {
+    while (true) {
+      var ref = myQueue.poll();
+
+      if (ref == null) {
+        break;
+      }
+
+      myMap.remove(ref);
+    }
+  }
+
+  private static final class Key<K> extends WeakReference<K> {
+
+    private final int myHash;
+
+    private Key(@NotNull K referent, @Nullable ReferenceQueue<K> queue) {
+      super(referent, queue);
+      myHash = System.identityHashCode(referent);
+    }
+
+    @Override
+    public int hashCode() {
+      return myHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (!(o instanceof Key<?> key)) {
+        return false;
+      }
+
+      var referent = get();
+      return referent != null && referent == key.get();
+    }
+  }
+}
@@ -16,6 +16,25 @@
 
 package com.bulenkov.iconloader;
 
+import com.bulenkov.iconloader.util.IconUsageManifest;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+
 /**
  * @author Konstantin Bulenkov
  */
@@ -48,5 +67,282 @@ public class IconLoaderTest extends IconLoaderTestCase {
     checkIcon("/icons/printPreview.png", true, true, "printPreview.png");
   }
 
+  public void testPreload() throws Exception {
+    setRetina(false);
+    final var paths = List.of("/icons/print.png", "/icons/missing.png");
+    final var executor = Executors.newFixedThreadPool(2);
+
+    try {
+      IconLoader.preload(paths, getClass(), executor).get();
+    } finally {
+      executor.shutdown();
+    }
+
+    final var icon = IconLoader.findIcon("/icons/print.png", getClass());
+    assertTrue(icon instanceof IconLoader.CachedImageIcon);
+    assertEquals(16, IconLoader.getIconSnapshot(icon).getIconWidth());
+  }
+
+  public void testVariantSurvivesDarkSwitch() throws Exception {
+    setRetina(false);
+    setDarkIcons(false);
+    final var icon = IconLoader.getIcon("/icons/print.png", getClass());
+    final var light = IconLoader.getIconSnapshot(icon);
+
+    setDarkIcons(true);
+    assertNotSame(light, IconLoader.getIconSnapshot(icon));
+
+    setDarkIcons(false);
+    assertSame(icon, IconLoader.getIcon("/icons/print.png", getClass()));
+    assertSame(light, IconLoader.getIconSnapshot(icon));
+  }
+
+  public void testClearCache() throws Exception {
+    setRetina(false);
+    final var path = "/icons/missing-" + getName() + ".png";
+    final var icon = IconLoader.getIcon("/icons/print.png", getClass());
+    assertNull(IconLoader.findIcon(path, getClass()));
+    assertNull(IconLoader.findIcon(path, getClass()));
+    assertTrue(IconLoader.getRepeatedlyMissingIcons().containsKey(path));
+
+    IconLoader.clearCache();
+    assertFalse(IconLoader.getRepeatedlyMissingIcons().containsKey(path));
+    assertNotSame(icon, IconLoader.getIcon("/icons/print.png", getClass()));
+  }
+
+  public void testDisabledIconSharedByImage() throws Exception {
+    setRetina(false);
+    final var icon = IconLoader.getIcon("/icons/print.png", getClass());
+    final var image = ((ImageIcon) IconLoader.getIconSnapshot(icon)).getImage();
+    final var disabled = IconLoader.getDisabledIcon(icon);
+
+    assertSame(disabled, IconLoader.getDisabledIcon(new ImageIcon(image)));
+    assertSame(disabled, IconLoader.getDisabledIcon(new ImageIcon(image)));
+    assertEquals(icon.getIconWidth(), disabled.getIconWidth());
+  }
+
+  public void testMBean() throws Exception {
+    setRetina(false);
+    IconLoader.registerMBean();
+    IconLoader.registerMBean();
+
+    final var server = ManagementFactory.getPlatformMBeanServer();
+    final var name = new ObjectName(IconLoaderMXBean.OBJECT_NAME);
+    final var lookups = getIconsCacheLookups(server, name);
+
+    IconLoader.getIcon("/icons/print.png", getClass()).getIconWidth();
+    IconLoader.getIcon("/icons/print.png", getClass()).getIconWidth();
+
+    assertEquals(lookups + 2, getIconsCacheLookups(server, name));
+    assertTrue((Long) server.getAttribute(name, "LoadCount") > 0);
+
+    // print.png is 16x16, so it's held strongly rather than in the budget
+    final var resident = (Long) server.getAttribute(
+      name,
+      "ResidentRasterBytes"
+    );
+    final var budgeted = (Long) server.getAttribute(
+      name,
+      "BudgetedRasterBytes"
+    );
+    assertTrue(resident >= budgeted + 16 * 16 * 4);
+  }
+
+  public void testMissingIconReported() throws Exception {
+    setRetina(false);
+    final var path = "/icons/missing-" + getName() + ".png";
+
+    for (var i = 0; i < 3; i++) {
+      assertNull(IconLoader.findIcon(path, getClass()));
+    }
+
+    assertNull(IconLoader.findIcon("NoSuchIcons.Missing", getClass()));
+    assertNull(IconLoader.findIcon(path, getClass().getClassLoader()));
+    final var missing = IconLoader.getRepeatedlyMissingIcons();
+    assertEquals(Integer.valueOf(4), missing.get(path));
+    assertFalse(missing.containsKey("NoSuchIcons.Missing"));
+
+    try {
+      IconLoader.findIcon(path, getClass(), false, true);
+      fail();
+    } catch (RuntimeException expected) {}
+  }
+
+  public void testMissingReflectiveIconInStrictMode() throws Exception {
+    setRetina(false);
+    final var path = "NoSuchIcons.Missing" + getName();
+
+    // the second lookup is answered from the missing icons, the same way
+    for (var i = 0; i < 2; i++) {
+      assertNull(IconLoader.findIcon(path, getClass(), false, true));
+    }
+  }
+
+  public void testAsyncLoading() throws Exception {
+    setRetina(false);
+    setDarkIcons(false);
+    IconLoader.clearCache();
+    final var tasks = new ArrayList<Runnable>();
+    IconLoader.setAsyncLoadingExecutor(tasks::add);
 
+    try {
+      final var icon = IconLoader.getIcon("/icons/print.png", getClass());
+      assertEquals(16, icon.getIconWidth());
+      assertEquals(16, icon.getIconHeight());
+      assertEquals(32, paint(icon).getRGB(8, 8) >>> 24);
+      assertEquals(1, tasks.size());
+
+      tasks.removeFirst().run();
+      final var loaded = paint(icon);
+      IconLoader.setAsyncLoadingExecutor(null);
+      assertSamePixels(paint(icon), loaded);
+    } finally {
+      IconLoader.setAsyncLoadingExecutor(null);
+    }
+  }
+
+  public void testAsyncPaintDoesNotWaitForLoad() throws Exception {
+    setRetina(false);
+    IconLoader.clearCache();
+    final var icon = IconLoader.getIcon("/icons/print.png", getClass());
+    final var locked = new CountDownLatch(1);
+    final var release = new CountDownLatch(1);
+    final var loader = new Thread(() -> {
+      synchronized (icon) { // as a load in progress does
+        locked.countDown();
+
+        try {
+          release.await();
+        } catch (InterruptedException ignore) {}
+      }
+    });
+    loader.start();
+    locked.await();
+
+    final var executor = Executors.newSingleThreadExecutor();
+    IconLoader.setAsyncLoadingExecutor(executor);
+
+    try {
+      final var painted = CompletableFuture.supplyAsync(() -> paint(icon));
+      assertEquals(32, painted.get(5, TimeUnit.SECONDS).getRGB(8, 8) >>> 24);
+    } finally {
+      release.countDown();
+      loader.join();
+      IconLoader.setAsyncLoadingExecutor(null);
+      executor.shutdown();
+    }
+  }
+
+  public void testAsyncLoadingFailure() throws Exception {
+    final var file = File.createTempFile("broken", ".png");
+    final var tasks = new ArrayList<Runnable>();
+
+    try {
+      Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+      final var icon = IconLoader.findIcon(file.toURI().toURL(), false);
+      IconLoader.setAsyncLoadingExecutor(tasks::add);
+
+      assertEquals(16, icon.getIconWidth());
+      assertEquals(1, tasks.size());
+      tasks.removeFirst().run();
+
+      assertEquals(16, icon.getIconWidth());
+      assertEquals(32, paint(icon).getRGB(8, 8) >>> 24);
+      assertTrue(tasks.isEmpty());
+    } finally {
+      IconLoader.setAsyncLoadingExecutor(null);
+      file.delete();
+    }
+  }
+
+  private static BufferedImage paint(Icon icon) {
+    final var image = new BufferedImage(
+      icon.getIconWidth(),
+      icon.getIconHeight(),
+      BufferedImage.TYPE_INT_ARGB
+    );
+    final var g = image.createGraphics();
+    icon.paintIcon(null, g, 0, 0);
+    g.dispose();
+    return image;
+  }
+
+  private static void assertSamePixels(BufferedImage a, BufferedImage b) {
+    for (var y = 0; y < a.getHeight(); y++) {
+      for (var x = 0; x < a.getWidth(); x++) {
+        assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+      }
+    }
+  }
+
+  public void testMissingIconPerClassLoader() throws Exception {
+    setRetina(false);
+    final var path = "/icons/missing-" + getName() + ".png";
+
+    try (
+      var first = new URLClassLoader(new URL[0], null);
+      var second = new URLClassLoader(new URL[0], null)
+    ) {
+      for (var i = 0; i < 2; i++) {
+        assertNull(IconLoader.findIcon(path, first));
+        assertNull(IconLoader.findIcon(path, second));
+      }
+    }
+
+    // each loader searched once, the second lookups were answered from the set
+    assertEquals(
+      Integer.valueOf(4),
+      IconLoader.getRepeatedlyMissingIcons().get(path)
+    );
+  }
+
+  public void testUsageReplayOnRetina() throws Exception {
+    setRetina(true);
+    setDarkIcons(false);
+    IconLoader.clearCache();
+    final var loader = getClass().getClassLoader();
+    final var file = File.createTempFile("icons", ".usage");
+
+    try {
+      final var recorded = new IconUsageManifest(file, 60, 16);
+      IconLoader.setUsageManifest(recorded);
+      paint(IconLoader.findIcon("/icons/print.png", getClass()));
+      recorded.save();
+
+      // the manifest keeps the requested path, replay adds @2x itself
+      final var replayed = new IconUsageManifest(file, 60, 16);
+      final var entries = replayed.takePending(loader);
+      assertNotNull(entries);
+      assertEquals(1, entries.size());
+      assertEquals("/icons/print.png", entries.getFirst().path());
+
+      final var pending = new IconUsageManifest(file, 60, 16);
+      IconLoader.setUsageManifest(pending);
+      IconLoader.clearCache();
+      final var icon = IconLoader.findIcon("/icons/print.png", loader);
+      assertNull(pending.takePending(loader));
+      ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS);
+
+      assertNotNull(icon);
+      assertTrue(
+        ((IconLoader.CachedImageIcon) icon).myOriginalPath.endsWith(
+            "print@2x.png"
+          )
+      );
+    } finally {
+      IconLoader.setUsageManifest(null);
+      setRetina(false);
+      file.delete();
+    }
+  }
+
+  private static long getIconsCacheLookups(
+    MBeanServer server,
+    ObjectName name
+  ) throws Exception {
+    return (
+      (Long) server.getAttribute(name, "IconsCacheHits") +
+      (Long) server.getAttribute(name, "IconsCacheMisses")
+    );
+  }
 }
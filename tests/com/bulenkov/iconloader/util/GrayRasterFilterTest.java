@@ -0,0 +1,75 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import javax.swing.GrayFilter;
+import junit.framework.TestCase;
+
+public class GrayRasterFilterTest extends TestCase {
+
+  public void testSameAsGrayFilter() {
+    var random = new Random(42);
+    var pixels = new int[4096];
+
+    for (var i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt();
+    }
+
+    for (var brighter : new boolean[] { true, false }) {
+      for (var percent : new int[] { 0, 30, 65, 100 }) {
+        var expected = new GrayFilter(brighter, percent);
+        var filter = new GrayRasterFilter(brighter, percent);
+        var actual = pixels.clone();
+        filter.filter(actual, 0, actual.length);
+
+        for (var i = 0; i < pixels.length; i++) {
+          assertEquals(expected.filterRGB(0, 0, pixels[i]), actual[i]);
+        }
+      }
+    }
+  }
+
+  public void testSubimage() {
+    @SuppressWarnings("UndesirableClassUsage")
+    var image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+
+    for (var y = 0; y < 8; y++) {
+      for (var x = 0; x < 8; x++) {
+        image.setRGB(x, y, 0xffff0000 | (x << 10) | (y << 2));
+      }
+    }
+
+    var filter = new GrayRasterFilter(true, 65);
+    var subimage = image.getSubimage(2, 3, 4, 4);
+    assertSame(subimage, filter.filter(subimage));
+
+    var expected = new GrayFilter(true, 65);
+
+    for (var y = 0; y < 8; y++) {
+      for (var x = 0; x < 8; x++) {
+        var rgb = 0xffff0000 | (x << 10) | (y << 2);
+        var inside = x >= 2 && x < 6 && y >= 3 && y < 7;
+        assertEquals(
+          inside ? expected.filterRGB(x, y, rgb) : rgb,
+          image.getRGB(x, y)
+        );
+      }
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import javax.swing.ImageIcon;
+import junit.framework.TestCase;
+
+public class IconAtlasTest extends TestCase {
+
+  private static final int ICONS_PER_PAGE = 16 * 16;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    IconAtlas.clear();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    IconAtlas.clear();
+    super.tearDown();
+  }
+
+  public void testPackedIconPaintsSamePixels() {
+    var icon = createIcon(3);
+    var packed = IconAtlas.pack(icon);
+
+    assertTrue(packed instanceof IconAtlas.AtlasIcon);
+    assertSame(packed, IconAtlas.pack(packed));
+    assertSamePixels(icon, packed);
+    assertSame(packed.getImage(), packed.getImage());
+
+    var unpacked = IconAtlas.unpack(packed);
+    assertFalse(unpacked instanceof IconAtlas.AtlasIcon);
+    assertSamePixels(icon, unpacked);
+  }
+
+  public void testSparsePageIsCompacted() {
+    var icons = new ArrayList<ImageIcon>();
+
+    for (var i = 0; i < ICONS_PER_PAGE; i++) {
+      icons.add(IconAtlas.pack(createIcon(i)));
+    }
+
+    var kept = icons.get(42);
+    var image = kept.getImage();
+    var dropped = new WeakReference<>(icons.get(0));
+    icons.clear();
+
+    for (var i = 0; i < 100 && dropped.get() != null; i++) {
+      System.gc();
+    }
+
+    assertNull(dropped.get());
+    IconAtlas.pack(createIcon(1000)); // starts a new page
+
+    assertNotSame(image, kept.getImage());
+    assertSamePixels(createIcon(42), kept);
+    image = null;
+
+    for (var i = 0; i < 100 && IconAtlas.getPageCount() > 1; i++) {
+      System.gc();
+    }
+
+    assertEquals(1, IconAtlas.getPageCount());
+  }
+
+  private static ImageIcon createIcon(int seed) {
+    //noinspection UndesirableClassUsage
+    var image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+
+    for (var y = 0; y < 16; y++) {
+      for (var x = 0; x < 16; x++) {
+        image.setRGB(x, y, 0xff000000 | seed * 0x1f3d5b + x * 16 + y);
+      }
+    }
+
+    return new ImageIcon(image);
+  }
+
+  private static void assertSamePixels(ImageIcon expected, ImageIcon actual) {
+    assertEquals(expected.getIconWidth(), actual.getIconWidth());
+    assertEquals(expected.getIconHeight(), actual.getIconHeight());
+    var a = paint(expected);
+    var b = paint(actual);
+
+    for (var y = 0; y < a.getHeight(); y++) {
+      for (var x = 0; x < a.getWidth(); x++) {
+        assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+      }
+    }
+  }
+
+  private static BufferedImage paint(ImageIcon icon) {
+    //noinspection UndesirableClassUsage
+    var image = new BufferedImage(
+      icon.getIconWidth(),
+      icon.getIconHeight(),
+      BufferedImage.TYPE_INT_ARGB
+    );
+    var g = image.createGraphics();
+    icon.paintIcon(null, g, 0, 0);
+    g.dispose();
+    return image;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.io.StringWriter;
+import java.net.URL;
+import junit.framework.TestCase;
+
+public class IconTraceTest extends TestCase {
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    IconTrace.setEnabled(true);
+    IconTrace.clear();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    IconTrace.setEnabled(false);
+    IconTrace.clear();
+    super.tearDown();
+  }
+
+  public void testWriteReport() throws Exception {
+    var url = new URL("file:/icons/x.png");
+
+    for (var i = 0; i < 2; i++) {
+      IconTrace.resolved(IconTrace.startResolve(), "/icons/x.png", "Foo", url);
+    }
+
+    IconTrace.resolved(IconTrace.startResolve(), "/icons/y.png", "Bar", null);
+
+    var start = IconTrace.beginLoad(url);
+    assertTrue(start != 0);
+    IconTrace.probed("/icons/x@2x.png", false);
+    IconTrace.read(IconTrace.now());
+    IconTrace.decoded(IconTrace.now());
+    IconTrace.endLoad(start);
+
+    var writer = new StringWriter();
+    IconTrace.writeReport(writer);
+    var report = writer.toString();
+
+    assertTrue(report, report.contains("lookups"));
+    assertTrue(report, report.contains("url: " + url));
+    assertTrue(report, report.contains("requested by: [Foo]"));
+    assertTrue(report, report.contains("probes: [x@2x.png-]"));
+    assertTrue(report, report.contains("not found"));
+    assertTrue(report, report.contains("in 2 icons"));
+    assertTrue(
+      report,
+      report.matches("(?s).*\\s2\\s+1\\s+/icons/x\\.png\\n.*")
+    );
+    assertTrue(
+      report,
+      report.matches("(?s).*\\s1\\s+0\\s+/icons/y\\.png\\n.*")
+    );
+  }
+
+  public void testDisabled() {
+    IconTrace.setEnabled(false);
+    assertFalse(IconTrace.isEnabled());
+    assertEquals(0, IconTrace.startResolve());
+
+    var writer = new StringWriter();
+    IconTrace.writeReport(writer);
+    assertTrue(writer.toString().contains("in 0 icons"));
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import junit.framework.TestCase;
+
+public class IconUsageManifestTest extends TestCase {
+
+  public void testSaveAndRead() throws Exception {
+    var file = File.createTempFile("icons", ".usage");
+    var unnamed = new ClassLoader(null) {};
+
+    try (var named = new URLClassLoader("plugin", new URL[0], null)) {
+      var recorded = new IconUsageManifest(file, 60, 2);
+      recorded.record(named, "/icons/a.png", "light@1.0");
+      recorded.record(unnamed, "/icons/b.png", "light@1.0");
+      assertTrue(recorded.isRecording());
+      recorded.record(named, "/icons/c.png", "dark@2.0");
+      assertFalse(recorded.isRecording());
+      recorded.record(named, "/icons/d.png", "light@1.0");
+      recorded.save();
+
+      var read = new IconUsageManifest(file, 60, 2);
+      assertNull(read.takePending(unnamed));
+      var entries = read.takePending(named);
+      assertNotNull(entries);
+      assertEquals(2, entries.size());
+      assertTrue(
+        entries.contains(
+          new IconUsageManifest.Entry("plugin", "/icons/a.png", "light@1.0")
+        )
+      );
+      assertTrue(
+        entries.contains(
+          new IconUsageManifest.Entry("plugin", "/icons/c.png", "dark@2.0")
+        )
+      );
+      assertNull(read.takePending(named));
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testStopsAtDeadline() throws Exception {
+    var manifest = new IconUsageManifest(new File("unused"), 0, 16);
+    assertFalse(manifest.isRecording());
+    manifest.record(getClass().getClassLoader(), "/icons/a.png", "light@1.0");
+    assertFalse(manifest.isRecording());
+  }
+}
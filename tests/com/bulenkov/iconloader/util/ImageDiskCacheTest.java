@@ -0,0 +1,175 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import javax.imageio.ImageIO;
+import junit.framework.TestCase;
+
+public class ImageDiskCacheTest extends TestCase {
+
+  private File myDir;
+  private File myCacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = Files.createTempDirectory("image-disk-cache").toFile();
+    myCacheDir = Files.createTempDirectory("image-disk-cache").toFile();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(myDir);
+    delete(myCacheDir);
+
+    super.tearDown();
+  }
+
+  public void testRoundTrip() throws Exception {
+    var cache = createCache(Long.MAX_VALUE);
+    var file = writeIcon("icon.png");
+    var image = createImage(7);
+
+    assertNull(cache.get(file.toURI().toURL(), "light", null));
+    cache.put(file.toURI().toURL(), "light", null, image);
+
+    var cached = (BufferedImage) cache.get(file.toURI().toURL(), "light", null);
+    assertNotNull(cached);
+    assertSamePixels(image, cached);
+    assertNull(cache.get(file.toURI().toURL(), "dark", null));
+  }
+
+  public void testSourceChangeInvalidates() throws Exception {
+    var cache = createCache(Long.MAX_VALUE);
+    var file = writeIcon("icon.png");
+    cache.put(file.toURI().toURL(), "light", null, createImage(7));
+    assertNotNull(cache.get(file.toURI().toURL(), "light", null));
+
+    assertTrue(file.setLastModified(file.lastModified() - 10_000));
+    assertNull(cache.get(file.toURI().toURL(), "light", null));
+  }
+
+  public void testCorruptEntry() throws Exception {
+    var cache = createCache(Long.MAX_VALUE);
+    var file = writeIcon("icon.png");
+    cache.put(file.toURI().toURL(), "light", null, createImage(7));
+    assertNotNull(cache.get(file.toURI().toURL(), "light", null));
+
+    var entries = myCacheDir.listFiles();
+    assertEquals(1, entries.length);
+    var bytes = Files.readAllBytes(entries[0].toPath());
+    Files.write(entries[0].toPath(), Arrays.copyOf(bytes, 30));
+    assertNull(cache.get(file.toURI().toURL(), "light", null));
+
+    Files.write(entries[0].toPath(), new byte[bytes.length]);
+    assertNull(cache.get(file.toURI().toURL(), "light", null));
+  }
+
+  public void testLeastRecentlyUsedEntriesAreDeleted() throws Exception {
+    var url = writeIcon("icon.png").toURI().toURL();
+    var probe = createCache(Long.MAX_VALUE);
+    probe.put(url, "variant0", null, createImage(0));
+    var entrySize = probe.getSize();
+    probe.clear();
+
+    var cache = createCache(3 * entrySize);
+
+    for (var i = 0; i < 3; i++) {
+      cache.put(url, "variant" + i, null, createImage(i));
+    }
+
+    for (var entry : myCacheDir.listFiles()) {
+      assertTrue(entry.setLastModified(System.currentTimeMillis() - 60_000));
+    }
+
+    assertNotNull(cache.get(url, "variant0", null)); // marks it as used
+    cache.put(url, "variant3", null, createImage(3));
+
+    assertEquals(2 * entrySize, cache.getSize());
+    assertNotNull(cache.get(url, "variant0", null));
+    assertNull(cache.get(url, "variant1", null));
+    assertNull(cache.get(url, "variant2", null));
+    assertNotNull(cache.get(url, "variant3", null));
+  }
+
+  public void testEntriesAreWrittenOnWriter() throws Exception {
+    var tasks = new ArrayList<Runnable>();
+    var cache = new ImageDiskCache(myCacheDir, Long.MAX_VALUE, tasks::add);
+    var url = writeIcon("icon.png").toURI().toURL();
+    var image = createImage(5);
+
+    cache.put(url, "light", null, image);
+    cache.put(url, "light", null, image);
+    assertEquals(1, tasks.size());
+    assertEquals(0, myCacheDir.list().length);
+    assertNull(cache.get(url, "light", null));
+
+    tasks.getFirst().run();
+    assertSamePixels(image, (BufferedImage) cache.get(url, "light", null));
+
+    // the entry is read into memory, so the file can be deleted right away
+    cache.clear();
+    assertEquals(0, myCacheDir.list().length);
+  }
+
+  private ImageDiskCache createCache(long limit) {
+    return new ImageDiskCache(myCacheDir, limit, Runnable::run);
+  }
+
+  private static void delete(File dir) throws IOException {
+    try (var files = Files.walk(dir.toPath())) {
+      files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  private File writeIcon(String name) throws IOException {
+    var file = new File(myDir, name);
+    ImageIO.write(createImage(0), "png", file);
+    return file;
+  }
+
+  private static BufferedImage createImage(int seed) {
+    //noinspection UndesirableClassUsage
+    var image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+
+    for (var y = 0; y < 16; y++) {
+      for (var x = 0; x < 16; x++) {
+        image.setRGB(x, y, (x * 16 + y) << 24 | seed * 0x010203 | x << 8 | y);
+      }
+    }
+
+    return image;
+  }
+
+  private static void assertSamePixels(BufferedImage a, BufferedImage b) {
+    assertEquals(a.getWidth(), b.getWidth());
+    assertEquals(a.getHeight(), b.getHeight());
+
+    for (var y = 0; y < a.getHeight(); y++) {
+      for (var x = 0; x < a.getWidth(); x++) {
+        assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import junit.framework.TestCase;
+
+public class ImageLoaderTest extends TestCase {
+
+  public void testImageIODecoderKeepsReaderLayout() throws Exception {
+    for (var type : new int[] {
+      BufferedImage.TYPE_INT_ARGB,
+      BufferedImage.TYPE_INT_RGB,
+      BufferedImage.TYPE_BYTE_GRAY,
+    }) {
+      @SuppressWarnings("UndesirableClassUsage")
+      var source = new BufferedImage(13, 7, type);
+
+      for (var y = 0; y < source.getHeight(); y++) {
+        for (var x = 0; x < source.getWidth(); x++) {
+          source.setRGB(x, y, (x * 19) << 24 | (y * 36) << 16 | x << 4 | y);
+        }
+      }
+
+      var out = new ByteArrayOutputStream();
+      ImageIO.write(source, "png", out);
+      var bytes = out.toByteArray();
+      var expected = ImageIO.read(new ByteArrayInputStream(bytes));
+
+      var image = ImageLoader.load(
+        new ByteArrayInputStream(bytes),
+        1,
+        ImageLoader.Decoder.IMAGEIO
+      );
+      assertTrue(image instanceof BufferedImage);
+      assertEquals(expected.getType(), ((BufferedImage) image).getType());
+      assertSamePixels(source, (BufferedImage) image);
+    }
+  }
+
+  public void testDecodersAgree() throws Exception {
+    var bytes = Files.readAllBytes(Path.of("tests/icons/print.png"));
+    var expected = ImageUtil.toBufferedImage(
+      ImageLoader.load(
+        new ByteArrayInputStream(bytes),
+        1,
+        ImageLoader.Decoder.TOOLKIT
+      )
+    );
+
+    for (var decoder : ImageLoader.Decoder.values()) {
+      var image = ImageLoader.load(new ByteArrayInputStream(bytes), 1, decoder);
+      assertSamePixels(expected, ImageUtil.toBufferedImage(image));
+    }
+  }
+
+  private static void assertSamePixels(BufferedImage a, BufferedImage b) {
+    assertEquals(a.getWidth(), b.getWidth());
+    assertEquals(a.getHeight(), b.getHeight());
+
+    for (var y = 0; y < a.getHeight(); y++) {
+      for (var x = 0; x < a.getWidth(); x++) {
+        assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+      }
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.awt.image.CropImageFilter;
+import java.awt.image.FilteredImageSource;
+import java.awt.image.ImageFilter;
+import java.awt.image.RGBImageFilter;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class ImageUtilTest extends TestCase {
+
+  public void testRgbFilter() {
+    var filter = new RGBImageFilter() {
+      @Override
+      public int filterRGB(int x, int y, int rgb) {
+        return (rgb ^ (x << 16) ^ (y << 8)) & 0xfff0ffff;
+      }
+    };
+
+    checkFiltered(createImage(), filter);
+  }
+
+  public void testRgbFilterIsCloned() {
+    class CountingFilter extends RGBImageFilter {
+      private int myCalls;
+
+      @Override
+      public int filterRGB(int x, int y, int rgb) {
+        myCalls++;
+        return rgb;
+      }
+    }
+
+    // every image gets its own copy of the filter's state
+    var filter = new CountingFilter();
+    ImageUtil.filter(createImage(), filter);
+    assertEquals(0, filter.myCalls);
+  }
+
+  public void testRasterFilterLeavesSourceIntact() {
+    var image = createImage();
+    var pixels = image.getRGB(0, 0, 9, 7, null, 0, 9);
+    var filtered = ImageUtil.filter(image, UIUtil.getGrayFilter());
+
+    assertNotSame(image, filtered);
+    assertTrue(filtered instanceof BufferedImage);
+    assertTrue(Arrays.equals(pixels, image.getRGB(0, 0, 9, 7, null, 0, 9)));
+    checkFiltered(image, UIUtil.getGrayFilter());
+  }
+
+  public void testOtherFilter() {
+    var filter = new CropImageFilter(1, 1, 3, 2);
+    var filtered = ImageUtil.filter(createImage(), filter);
+    assertFalse(filtered instanceof BufferedImage);
+    assertEquals(3, ImageUtil.toBufferedImage(filtered).getWidth());
+  }
+
+  private static void checkFiltered(BufferedImage image, ImageFilter filter) {
+    var expected = ImageUtil.toBufferedImage(
+      Toolkit
+        .getDefaultToolkit()
+        .createImage(new FilteredImageSource(image.getSource(), filter))
+    );
+    var actual = (BufferedImage) ImageUtil.filter(image, filter);
+
+    for (var y = 0; y < image.getHeight(); y++) {
+      for (var x = 0; x < image.getWidth(); x++) {
+        assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+      }
+    }
+  }
+
+  private static BufferedImage createImage() {
+    @SuppressWarnings("UndesirableClassUsage")
+    var image = new BufferedImage(9, 7, BufferedImage.TYPE_INT_ARGB);
+    var random = new Random(7);
+
+    for (var y = 0; y < image.getHeight(); y++) {
+      for (var x = 0; x < image.getWidth(); x++) {
+        image.setRGB(x, y, random.nextInt() | 0xff000000);
+      }
+    }
+
+    return image;
+  }
+}
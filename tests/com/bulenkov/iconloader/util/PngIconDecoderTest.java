@@ -0,0 +1,132 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import junit.framework.TestCase;
+
+public class PngIconDecoderTest extends TestCase {
+
+  public void testRgba() throws Exception {
+    checkDecoded(createImage(BufferedImage.TYPE_INT_ARGB, 16, 16));
+  }
+
+  public void testRgb() throws Exception {
+    checkDecoded(createImage(BufferedImage.TYPE_INT_RGB, 13, 7));
+  }
+
+  public void testGray() throws Exception {
+    checkDecoded(createImage(BufferedImage.TYPE_BYTE_GRAY, 16, 16));
+  }
+
+  public void testPalette() throws Exception {
+    checkDecoded(createImage(BufferedImage.TYPE_BYTE_INDEXED, 32, 32));
+  }
+
+  public void testOneBitPalette() throws Exception {
+    checkDecoded(createImage(BufferedImage.TYPE_BYTE_BINARY, 17, 5));
+  }
+
+  public void testIcons() throws Exception {
+    for (var name : new String[] { "print.png", "print@2x_dark.png" }) {
+      checkDecoded(Files.readAllBytes(Path.of("tests/icons", name)));
+    }
+  }
+
+  public void testTooBig() throws Exception {
+    var size = PngIconDecoder.MAX_SIZE + 1;
+    var bytes = toPng(createImage(BufferedImage.TYPE_INT_ARGB, size, 1));
+    assertNull(PngIconDecoder.decode(bytes, bytes.length));
+  }
+
+  public void testNotPng() {
+    var bytes = "GIF89a is not a PNG signature at all".getBytes();
+    assertNull(PngIconDecoder.decode(bytes, bytes.length));
+  }
+
+  private static BufferedImage createImage(int type, int width, int height) {
+    @SuppressWarnings("UndesirableClassUsage")
+    var image = new BufferedImage(width, height, type);
+    var random = new Random(width * 31L + height);
+
+    for (var y = 0; y < height; y++) {
+      for (var x = 0; x < width; x++) {
+        // smooth areas and noise, so that the encoder picks various filters
+        var rgb = y < height / 2 ? (x * 16) << 8 | y * 8 : random.nextInt();
+        image.setRGB(x, y, rgb);
+      }
+    }
+
+    return image;
+  }
+
+  private static byte[] toPng(BufferedImage image) throws IOException {
+    var out = new ByteArrayOutputStream();
+    assertTrue(ImageIO.write(image, "png", out));
+    return out.toByteArray();
+  }
+
+  private static void checkDecoded(BufferedImage image) throws IOException {
+    checkDecoded(toPng(image));
+  }
+
+  /**
+   * The result must match the default Toolkit decoder, which e.g. doesn't
+   * apply gamma correction to gray images unlike ImageIO. Toolkit images are
+   * premultiplied, so colors of translucent pixels may differ by rounding.
+   */
+  private static void checkDecoded(byte[] bytes) {
+    var expected = ImageUtil.toBufferedImage(
+      ImageLoader.loadFromStream(new ByteArrayInputStream(bytes))
+    );
+    var decoded = PngIconDecoder.decode(bytes, bytes.length);
+    assertNotNull(decoded);
+    assertEquals(expected.getWidth(), decoded.getWidth());
+    assertEquals(expected.getHeight(), decoded.getHeight());
+
+    for (var y = 0; y < expected.getHeight(); y++) {
+      for (var x = 0; x < expected.getWidth(); x++) {
+        var e = expected.getRGB(x, y);
+        var d = decoded.getRGB(x, y);
+
+        var alpha = e >>> 24;
+        var message =
+          "pixel " + x + ", " + y + ": " +
+          Integer.toHexString(e) + " vs " + Integer.toHexString(d);
+        assertEquals(message, alpha, d >>> 24);
+
+        if (alpha == 0) {
+          continue; // color of transparent pixels doesn't matter
+        }
+
+        var tolerance = 255 / alpha;
+
+        for (var shift = 0; shift < 24; shift += 8) {
+          var diff = ((e >> shift) & 0xff) - ((d >> shift) & 0xff);
+          assertTrue(message, Math.abs(diff) <= tolerance);
+        }
+      }
+    }
+  }
+}
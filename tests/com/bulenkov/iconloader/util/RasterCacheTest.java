@@ -0,0 +1,90 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+
+public class RasterCacheTest extends TestCase {
+
+  private static final long IMAGE_SIZE = 4 * 10 * 10;
+
+  public void testFrequentlyUsedSurvives() {
+    var cache = new RasterCache(3 * IMAGE_SIZE);
+    var evicted = new ArrayList<RasterCache.Ref<?>>();
+    var a = cache.add(createImage(), evicted::add);
+    var b = cache.add(createImage(), evicted::add);
+    var c = cache.add(createImage(), evicted::add);
+
+    a.get();
+    a.get();
+    var d = cache.add(createImage(), evicted::add);
+
+    assertNotNull(a.get());
+    assertNull(b.get());
+    assertNotNull(c.get());
+    assertNotNull(d.get());
+    assertEquals(1, evicted.size());
+    assertSame(b, evicted.getFirst());
+    assertEquals(3 * IMAGE_SIZE, cache.getSize());
+  }
+
+  public void testRelease() {
+    var cache = new RasterCache(3 * IMAGE_SIZE);
+    var evicted = new ArrayList<RasterCache.Ref<?>>();
+    var a = cache.add(createImage(), evicted::add);
+    var b = cache.add(createImage(), evicted::add);
+
+    a.release();
+    a.release();
+
+    assertNull(a.get());
+    assertNotNull(b.get());
+    assertEquals(IMAGE_SIZE, cache.getSize());
+    assertEquals(1, cache.getCount());
+    assertTrue(evicted.isEmpty());
+
+    cache.clear();
+    assertNull(b.get());
+    assertEquals(0, cache.getSize());
+    assertEquals(1, evicted.size());
+  }
+
+  public void testOversizedEntryKeptOutOfBudget() {
+    var cache = new RasterCache(3 * IMAGE_SIZE);
+    var evicted = new ArrayList<RasterCache.Ref<?>>();
+    var a = cache.add(createImage(), evicted::add);
+    @SuppressWarnings("UndesirableClassUsage")
+    var big = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+    var ref = cache.add(big, evicted::add);
+
+    assertSame(big, ref.get());
+    assertNotNull(a.get());
+    assertEquals(IMAGE_SIZE, cache.getSize());
+    assertEquals(1, cache.getCount());
+    assertTrue(evicted.isEmpty());
+
+    ref.release();
+    assertNull(ref.get());
+  }
+
+  private static BufferedImage createImage() {
+    //noinspection UndesirableClassUsage
+    return new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+  }
+}
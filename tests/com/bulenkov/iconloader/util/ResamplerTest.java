@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.image.BufferedImage;
+import junit.framework.TestCase;
+
+public class ResamplerTest extends TestCase {
+
+  public void testFlatColorStaysFlat() {
+    var src = createImage(
+      37,
+      23,
+      BufferedImage.TYPE_INT_ARGB,
+      (x, y) -> 0x80336699
+    );
+
+    for (var filter : Resampler.Filter.values()) {
+      for (var size : new int[] { 5, 16, 23, 61 }) {
+        var result = Resampler.resample(src, size, size + 3, filter);
+
+        for (var y = 0; y < result.getHeight(); y++) {
+          for (var x = 0; x < result.getWidth(); x++) {
+            assertEquals(filter.name(), 0x80336699, result.getRGB(x, y));
+          }
+        }
+      }
+    }
+  }
+
+  public void testBoxAveragesPixels() {
+    var src = createImage(
+      4,
+      2,
+      BufferedImage.TYPE_INT_RGB,
+      (x, y) -> x % 2 == 0 ? 0xff000000 : 0xffc8c8c8
+    );
+    var result = Resampler.resample(src, 2, 1, Resampler.Filter.BOX);
+
+    assertEquals(BufferedImage.TYPE_INT_RGB, result.getType());
+    assertEquals(0xff646464, result.getRGB(0, 0));
+    assertEquals(0xff646464, result.getRGB(1, 0));
+  }
+
+  public void testTransparentPixelsDontBleed() {
+    var src = createImage(
+      8,
+      8,
+      BufferedImage.TYPE_INT_ARGB,
+      (x, y) -> x < 4 ? 0x00ff0000 : 0xff0000ff
+    );
+
+    for (var filter : Resampler.Filter.values()) {
+      var result = Resampler.resample(src, 3, 3, filter);
+
+      for (var x = 0; x < 3; x++) {
+        var pixel = result.getRGB(x, 1);
+        assertEquals(filter.name(), 0, pixel & 0xff0000);
+      }
+    }
+  }
+
+  public void testKernelWeightsAddUp() {
+    for (var filter : Resampler.Filter.values()) {
+      var kernel = Resampler.createKernel(101, 17, filter);
+
+      for (var i = 0; i < 17; i++) {
+        var sum = 0;
+
+        for (var k = 0; k < kernel.myCounts[i]; k++) {
+          sum += kernel.myWeights[i * kernel.myWindow + k];
+        }
+
+        assertEquals(filter.name(), 1 << 14, sum);
+      }
+    }
+  }
+
+  public void testKernelsAreCached() {
+    var src = createImage(24, 24, BufferedImage.TYPE_INT_ARGB, (x, y) -> x * y);
+    Resampler.clearKernelCache();
+    IconStatistics.RESAMPLING_KERNELS.reset();
+
+    Resampler.resample(src, 30, 30, Resampler.Filter.LANCZOS3);
+    assertEquals(1, IconStatistics.RESAMPLING_KERNELS.getMisses());
+    assertEquals(1, IconStatistics.RESAMPLING_KERNELS.getHits());
+
+    Resampler.resample(src, 30, 30, Resampler.Filter.LANCZOS3);
+    assertEquals(1, IconStatistics.RESAMPLING_KERNELS.getMisses());
+    assertEquals(3, IconStatistics.RESAMPLING_KERNELS.getHits());
+    assertEquals(1, Resampler.getCachedKernelCount());
+  }
+
+  private static BufferedImage createImage(
+    int width,
+    int height,
+    int type,
+    Pixels pixels
+  ) {
+    @SuppressWarnings("UndesirableClassUsage")
+    var image = new BufferedImage(width, height, type);
+
+    for (var y = 0; y < height; y++) {
+      for (var x = 0; x < width; x++) {
+        image.setRGB(x, y, pixels.get(x, y));
+      }
+    }
+
+    return image;
+  }
+
+  private interface Pixels {
+    int get(int x, int y);
+  }
+}
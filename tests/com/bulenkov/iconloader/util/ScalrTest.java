@@ -0,0 +1,175 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.awt.Dimension;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+public class ScalrTest extends TestCase {
+
+  public void testParallelScalingMatchesSerial() {
+    var src = createImage(997, 613);
+    var hints = new Object[] {
+      RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
+      RenderingHints.VALUE_INTERPOLATION_BILINEAR,
+      RenderingHints.VALUE_INTERPOLATION_BICUBIC,
+    };
+
+    for (var hint : hints) {
+      assertScaledInParallel(src, hint, 331, 207);
+      assertScaledInParallel(src, hint, 1409, 1201);
+    }
+  }
+
+  public void testResizeIntoDestination() {
+    var src = createImage(301, 187);
+    var methods = new Scalr.Method[] {
+      Scalr.Method.BALANCED,
+      Scalr.Method.QUALITY,
+      Scalr.Method.ULTRA_QUALITY,
+      Scalr.Method.BICUBIC,
+    };
+
+    for (var method : methods) {
+      for (var size : new int[] { 37, 410 }) {
+        var expected = Scalr.resize(
+          src,
+          method,
+          Scalr.Mode.FIT_EXACT,
+          size,
+          size
+        );
+        var destination = createImage(size, size);
+        assertSame(destination, Scalr.resize(src, method, destination));
+        assertEquals(method, expected, destination);
+      }
+    }
+  }
+
+  public void testResampleIntoDestination() {
+    var src = createImage(301, 187);
+    @SuppressWarnings("UndesirableClassUsage")
+    var opaque = new BufferedImage(301, 187, BufferedImage.TYPE_INT_RGB);
+    var graphics = opaque.createGraphics();
+    graphics.drawImage(src, 0, 0, null);
+    graphics.dispose();
+    var methods = new Scalr.Method[] {
+      Scalr.Method.BOX,
+      Scalr.Method.BILINEAR,
+      Scalr.Method.LANCZOS3,
+    };
+
+    for (var method : methods) {
+      var expected = Scalr.resize(src, method, Scalr.Mode.FIT_EXACT, 53, 41);
+      @SuppressWarnings("UndesirableClassUsage")
+      var parent = new BufferedImage(60, 50, BufferedImage.TYPE_INT_ARGB);
+      var subImage = parent.getSubimage(5, 7, 53, 41);
+      assertSame(subImage, Scalr.resize(src, method, subImage));
+      assertEquals(method, expected, subImage);
+
+      // an opaque image is resampled straight into an opaque destination
+      @SuppressWarnings("UndesirableClassUsage")
+      var rgb = new BufferedImage(53, 41, BufferedImage.TYPE_INT_RGB);
+      expected = Scalr.resize(opaque, method, Scalr.Mode.FIT_EXACT, 53, 41);
+      assertSame(rgb, Scalr.resize(opaque, method, rgb));
+      assertEquals(method, expected, rgb);
+    }
+  }
+
+  public void testResizeAllMatchesResize() throws InterruptedException {
+    var srcs = new ArrayList<BufferedImage>();
+    var sizes = new ArrayList<Dimension>();
+
+    for (var i = 0; i < 12; i++) {
+      srcs.add(createImage(40 + 23 * i, 170 - 9 * i));
+      sizes.add(new Dimension(16 + 5 * (i % 4), 16 + 3 * (i % 3)));
+    }
+
+    var executor = Executors.newFixedThreadPool(3);
+
+    try {
+      for (var method : Scalr.Method.values()) {
+        var results = Scalr.resizeAll(srcs, method, sizes, executor);
+
+        for (var i = 0; i < srcs.size(); i++) {
+          var size = sizes.get(i);
+          var expected = Scalr.resize(
+            srcs.get(i),
+            method,
+            size.width,
+            size.height
+          );
+          assertEquals(method, expected, results.get(i));
+        }
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  private static void assertEquals(
+    Object method,
+    BufferedImage expected,
+    BufferedImage actual
+  ) {
+    var width = expected.getWidth();
+    var height = expected.getHeight();
+    assertEquals(method + ": width", width, actual.getWidth());
+    assertEquals(method + ": height", height, actual.getHeight());
+
+    var pixels = expected.getRGB(0, 0, width, height, null, 0, width);
+    var actualPixels = actual.getRGB(0, 0, width, height, null, 0, width);
+
+    for (var i = 0; i < pixels.length; i++) {
+      if (pixels[i] != actualPixels[i]) {
+        fail(method + ": pixel " + i % width + ", " + i / width + " differs");
+      }
+    }
+  }
+
+  private static void assertScaledInParallel(
+    BufferedImage src,
+    Object hint,
+    int width,
+    int height
+  ) {
+    var serial = Scalr.scaleImage(src, width, height, hint, false);
+    var parallel = Scalr.scaleImage(src, width, height, hint, true);
+    assertEquals(hint, serial, parallel);
+  }
+
+  private static BufferedImage createImage(int width, int height) {
+    @SuppressWarnings("UndesirableClassUsage")
+    var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    var random = new Random(21);
+
+    for (var y = 0; y < height; y++) {
+      for (var x = 0; x < width; x++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+
+    return image;
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+public class VariantIndexTest extends TestCase {
+
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = Files.createTempDirectory("variant-index").toFile();
+    VariantIndex.setCheckInterval(0);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      VariantIndex.clear();
+      VariantIndex.setCheckInterval(TimeUnit.SECONDS.toNanos(1));
+
+      try (var files = Files.walk(myDir.toPath())) {
+        files
+          .sorted(Comparator.reverseOrder())
+          .forEach(p -> p.toFile().delete());
+      }
+    } finally {
+      super.tearDown();
+    }
+  }
+
+  public void testDirectory() throws IOException {
+    var url = new File(myDir, "add.png").toURI().toURL();
+    assertTrue(new File(myDir, "add.png").createNewFile());
+    assertTrue(new File(myDir, "add@2x.png").createNewFile());
+    assertTrue(new File(myDir, "remove_dark.png").createNewFile());
+
+    assertEquals(
+      Set.of("add@2x.png", "remove_dark.png"),
+      VariantIndex.getVariants(url)
+    );
+  }
+
+  public void testDirectoryChanged() throws IOException {
+    var url = new File(myDir, "add.png").toURI().toURL();
+    assertTrue(new File(myDir, "add.png").createNewFile());
+    assertEquals(Set.of(), VariantIndex.getVariants(url));
+
+    assertTrue(new File(myDir, "add_dark.png").createNewFile());
+    assertTrue(myDir.setLastModified(myDir.lastModified() + 2000));
+    assertEquals(Set.of("add_dark.png"), VariantIndex.getVariants(url));
+  }
+
+  public void testJar() throws IOException {
+    var jar = new File(myDir, "icons.jar");
+    writeJar(jar, "icons/add.png", "icons/add@2x_dark.png", "other/add@2x.png");
+
+    var base = "jar:" + jar.toURI() + "!/";
+    assertEquals(
+      Set.of("add@2x_dark.png"),
+      VariantIndex.getVariants(base + "icons/add.png", null)
+    );
+    assertEquals(
+      Set.of(),
+      VariantIndex.getVariants(base + "missing/add.png", null)
+    );
+  }
+
+  public void testJarUrlInSubdirectory() throws IOException {
+    var jar = new File(myDir, "icons.jar");
+    writeJar(jar, "icons/my actions/add.png", "icons/my actions/add@2x.png");
+
+    var url = new URL("jar:" + jar.toURI() + "!/icons/my%20actions/add.png");
+    assertEquals(Set.of("add@2x.png"), VariantIndex.getVariants(url));
+  }
+
+  public void testJarChanged() throws IOException {
+    var jar = new File(myDir, "icons.jar");
+    var url = "jar:" + jar.toURI() + "!/icons/add.png";
+    writeJar(jar, "icons/add.png");
+    assertEquals(Set.of(), VariantIndex.getVariants(url, null));
+
+    writeJar(jar, "icons/add.png", "icons/add_dark.png");
+    assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+    assertEquals(Set.of("add_dark.png"), VariantIndex.getVariants(url, null));
+  }
+
+  public void testChangesAreCheckedPeriodically() throws IOException {
+    VariantIndex.setCheckInterval(TimeUnit.HOURS.toNanos(1));
+    var url = new File(myDir, "add.png").toURI().toURL();
+    assertEquals(Set.of(), VariantIndex.getVariants(url));
+
+    assertTrue(new File(myDir, "add_dark.png").createNewFile());
+    assertTrue(myDir.setLastModified(myDir.lastModified() + 2000));
+    assertEquals(Set.of(), VariantIndex.getVariants(url));
+
+    VariantIndex.clear();
+    assertEquals(Set.of("add_dark.png"), VariantIndex.getVariants(url));
+  }
+
+  public void testVariantsInOtherClassPathRoots() throws IOException {
+    var dir = new File(myDir, "classes");
+    assertTrue(new File(dir, "icons").mkdirs());
+    assertTrue(new File(dir, "icons/add.png").createNewFile());
+    var jar = new File(myDir, "resources.jar");
+    writeJar(jar, "icons/add@2x.png", "other/add_dark.png");
+
+    var urls = new URL[] { dir.toURI().toURL(), jar.toURI().toURL() };
+
+    try (var loader = new URLClassLoader(urls, null)) {
+      assertEquals(
+        Set.of("add@2x.png"),
+        VariantIndex.getClassPathVariants("icons/add.png", loader)
+      );
+    }
+
+    urls = new URL[] { dir.toURI().toURL(), new URL("http://localhost/") };
+
+    try (var loader = new URLClassLoader(urls, null)) {
+      assertNull(VariantIndex.getClassPathVariants("icons/add.png", loader));
+    }
+  }
+
+  public void testNotIndexed() {
+    assertNull(VariantIndex.getVariants("http://localhost/add.png", null));
+  }
+
+  private static void writeJar(File jar, String... names) throws IOException {
+    try (var out = new ZipOutputStream(new FileOutputStream(jar))) {
+      for (var name : names) {
+        out.putNextEntry(new ZipEntry(name));
+        out.closeEntry();
+      }
+    }
+  }
+}